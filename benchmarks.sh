@@ -3,10 +3,16 @@ if [ -z "$QUARKUS_VERSIONS" ]; then
     QUARKUS_VERSIONS="3.15.1 3.28.4"
 fi
 
+# The warm-up is repeated until the JIT compilation time of the server drops below 100 ms per round
+# but at most WARMUP_MAX_ROUNDS times
 if [ -z "$WARMUP_CLIENTS" ]; then
     WARMUP_CLIENTS=500
 fi
 
+if [ -z "$WARMUP_MAX_ROUNDS" ]; then
+    WARMUP_MAX_ROUNDS=3
+fi
+
 if [ -z "$TEST_CLIENTS" ]; then
     TEST_CLIENTS=5000
 fi
@@ -15,6 +21,130 @@ if [ -z "$TIMEOUT" ]; then
     TIMEOUT=60
 fi
 
+# The server implementations to test: "next" (websockets-next) and "legacy" (Jakarta WebSocket)
+# The legacy server only implements the "to-lower-case" variant
+if [ -z "$SERVERS" ]; then
+    SERVERS="next legacy"
+fi
+
+# The number of benchmark runs per version and variant
+# The summary compares the runs with the baseline and the script exits with 1 if a significant regression is detected
+if [ -z "$RUNS" ]; then
+    RUNS=5
+fi
+
+# The version other versions are compared to; the oldest version by default
+if [ -z "$BASELINE" ]; then
+    BASELINE=""
+fi
+
+# The number of client processes used in the benchmark phase
+# Use more than one worker if a single client JVM runs out of ephemeral ports, file descriptors or CPU
+if [ -z "$WORKERS" ]; then
+    WORKERS=1
+fi
+
+# The endpoint variants to test, i.e. the server paths without the leading slash
+# Use "-matrix" to test all combinations of the processing mode and the execution model
+# The virtual thread variants require Java 21+; they're skipped if the servers run on an older Java version
+# Use "-session" to test the stateful session workload with each way of synchronizing the session state (next only)
+if [ -z "$VARIANTS" ]; then
+    VARIANTS="to-lower-case"
+fi
+
+# Use "-broadcast" to run the fan-out workload against the "next" server with an increasing number of connections
+# Each publisher sends BROADCAST_MESSAGES messages and every message is delivered to all connections
+if [ -z "$BROADCAST_CLIENTS" ]; then
+    BROADCAST_CLIENTS="100 1000 5000"
+fi
+
+if [ -z "$BROADCAST_PUBLISHERS" ]; then
+    BROADCAST_PUBLISHERS=1
+fi
+
+if [ -z "$BROADCAST_MESSAGES" ]; then
+    BROADCAST_MESSAGES=100
+fi
+
+# The number of messages per second sent across all publishers
+if [ -z "$BROADCAST_RATE" ]; then
+    BROADCAST_RATE=100
+fi
+
+# Use "-churn" to open and close connections continuously at each of the CHURN_RATES (connections per second)
+# Each connection sends CHURN_MESSAGES messages before it's closed
+if [ -z "$CHURN_RATES" ]; then
+    CHURN_RATES="100,200,500,1000"
+fi
+
+if [ -z "$CHURN_STEP_DURATION" ]; then
+    CHURN_STEP_DURATION=10s
+fi
+
+if [ -z "$CHURN_MESSAGES" ]; then
+    CHURN_MESSAGES=0
+fi
+
+# Use "-idle" to ramp up to IDLE_CLIENTS idle connections in IDLE_STEPS steps and sample the server memory at each step
+if [ -z "$IDLE_CLIENTS" ]; then
+    IDLE_CLIENTS=10000
+fi
+
+if [ -z "$IDLE_STEPS" ]; then
+    IDLE_STEPS=5
+fi
+
+# Use "-compression" to compare permessage-deflate with uncompressed messages against the "next" server started with
+# -Dserver.compression=true
+# Each payload size in COMPRESSION_SIZES (bytes) is tested with random and compressible content, with and without
+# compression; the bytes on the wire and the CPU time per message are added to the summary
+# The legacy server does not negotiate permessage-deflate
+if [ -z "$COMPRESSION_SIZES" ]; then
+    COMPRESSION_SIZES="256 4096 65536"
+fi
+
+# Use "-tls" to build the servers with a self-signed certificate and repeat each variant (and the churn workload) over
+# wss://; the TLS runs are reported as separate variants, e.g. "to-lower-case-tls" vs "to-lower-case"
+# TLS_PROVIDER is used by both the servers and the client: "jdk" or "openssl" (the variants are suffixed with "-openssl")
+if [ -z "$TLS_PROVIDER" ]; then
+    TLS_PROVIDER=jdk
+fi
+
+# Use "-saturation" to search for the max throughput that meets the SLO (p99 below SATURATION_SLO_P99 and no errors)
+# with each of SATURATION_CLIENTS connections; the versions are compared by the max msgs/s at SLO in the summary
+if [ -z "$SATURATION_SLO_P99" ]; then
+    SATURATION_SLO_P99=10ms
+fi
+
+if [ -z "$SATURATION_CLIENTS" ]; then
+    SATURATION_CLIENTS="100,1000,5000"
+fi
+
+if [ -z "$SATURATION_START_RATE" ]; then
+    SATURATION_START_RATE=1000
+fi
+
+if [ -z "$SATURATION_PROBE_DURATION" ]; then
+    SATURATION_PROBE_DURATION=10s
+fi
+
+# Use "-routes" to build websocket-server-next with each of ROUTES_COUNTS generated endpoints of each of ROUTES_KINDS
+# ("static" paths or paths with a "{roomId}" parameter) and spread the connections across the endpoints; the handshake
+# latency and the message latency of each number of routes are compared in the summary
+if [ -z "$ROUTES_COUNTS" ]; then
+    ROUTES_COUNTS="1 100 500"
+fi
+
+if [ -z "$ROUTES_KINDS" ]; then
+    ROUTES_KINDS="static param"
+fi
+
+# Use "-startup" to measure the time from the process start until the first echo and the RSS of each server (JVM mode)
+# after the benchmarks
+# Use "-native" to build websocket-server-next as a native executable (GraalVM or Mandrel must be installed locally)
+# The native server is tested with the same variants and reported as the "next-native" server, i.e. it's compared to
+# the JVM mode side by side; the startup is always measured for the native server
+
 # Use "-flame" to generate flame graphs with async profiler
 # If async profiler is used then the following runtime variables must be set:
 # sysctl kernel.perf_event_paranoid=1
@@ -42,89 +172,156 @@ contains_arg() {
     fi
 }
 
-wait_for_start() {
-    counter=1
-    while [ "$(jps | grep quarkus-run)" == "" ]
-    do
-      sleep 1
-      echo "Waiting ${counter}s for the server to start.."
-      let counter++
-    done
-    echo "Server started"
-}
+if contains_arg "-matrix" "$@"; then
+    VARIANTS="to-lower-case serial-event-loop serial-worker concurrent-worker serial-virtual-thread concurrent-virtual-thread serial-uni concurrent-uni"
+fi
 
-wait_for_stop() {
-    counter=1
-    while [ "$(jps | grep quarkus-run)" != "" ]
-    do
-      sleep 1
-      echo "Waiting ${counter}s for the server to stop.."
-      let counter++
-    done
-    echo "Server stopped"
-}
+if contains_arg "-session" "$@"; then
+    VARIANTS="$VARIANTS session-synchronized session-concurrent-map session-striped session-confined"
+fi
+
+# Use "-jfr" to record the server with JFR during each benchmark run, i.e. not during the warmup phase
+# The allocation and GC profile is added to the result and the recordings are stored in websocket-server-*/target/jfr
+JFR_ARGS=""
+if contains_arg "-jfr" "$@"; then
+    JFR_ARGS="-Dserver.jfr=true"
+fi
+
+# Use "-steady" to skip the separate warmup phase; instead, the warmup is trimmed from each benchmark run once the steady
+# state is detected in the per-second time series (see target/time-series in the test client)
+STEADY_ARGS=""
+if contains_arg "-steady" "$@"; then
+    STEADY_ARGS="-Dsteady-state.trim=true"
+fi
+
+ORCHESTRATOR_ARGS=""
+if contains_arg "-tls" "$@"; then
+    ORCHESTRATOR_ARGS="$ORCHESTRATOR_ARGS -Dorchestrator.tls=true -Dtls.provider=$TLS_PROVIDER"
+fi
+if contains_arg "-flame" "$@"; then
+    ORCHESTRATOR_ARGS="$ORCHESTRATOR_ARGS -Dorchestrator.async-profiler=$ASYNC_PROFILER_PATH"
+fi
+if contains_arg "-startup" "$@"; then
+    ORCHESTRATOR_ARGS="$ORCHESTRATOR_ARGS -Dorchestrator.startup=true"
+fi
+if contains_arg "-native" "$@"; then
+    SERVERS="$SERVERS next-native"
+fi
 
 echo "====================================================="
-echo "WS Next - Quarkus versions to test: $QUARKUS_VERSIONS";
-echo "Warmup clients: $WARMUP_CLIENTS";
+echo "WS Next vs Legacy - Quarkus versions to test: $QUARKUS_VERSIONS";
+echo "Servers: $SERVERS";
+echo "Variants: $VARIANTS";
+if contains_arg "-steady" "$@"; then
+    echo "Warmup: trimmed at steady state";
+else
+    echo "Warmup clients: $WARMUP_CLIENTS";
+fi
 echo "Test clients: $TEST_CLIENTS";
+echo "Workers: $WORKERS";
+echo "Runs: $RUNS";
+if contains_arg "-broadcast" "$@"; then
+    echo "Broadcast clients: $BROADCAST_CLIENTS";
+fi
+if contains_arg "-churn" "$@"; then
+    echo "Churn rates: $CHURN_RATES";
+fi
+if contains_arg "-idle" "$@"; then
+    echo "Idle clients: $IDLE_CLIENTS";
+fi
+if contains_arg "-compression" "$@"; then
+    echo "Compression payload sizes: $COMPRESSION_SIZES";
+fi
+if contains_arg "-tls" "$@"; then
+    echo "TLS provider: $TLS_PROVIDER";
+fi
+if contains_arg "-saturation" "$@"; then
+    echo "Saturation: p99 < $SATURATION_SLO_P99 with $SATURATION_CLIENTS clients";
+fi
+if contains_arg "-routes" "$@"; then
+    echo "Routes: $ROUTES_COUNTS ($ROUTES_KINDS)";
+fi
 echo "====================================================="
 
-# build the client
-cd test-client
+# build the client - the payload generator is shared with the Gatling simulation and the JMH benchmarks
+cd payload-generator
+mvn clean install
+cd ../test-client
 mvn clean package
-cd ../
-
-QUARKUS_VERSIONS_ARRAY=$(echo $QUARKUS_VERSIONS);
-
-for i in $QUARKUS_VERSIONS_ARRAY
-do
-    # build and run server
-    cd websocket-server-next
-    mvn clean package -Dquarkus.platform.version=$i
-    nohup java -Dtest-auto-exit=5s -jar target/quarkus-app/quarkus-run.jar &
-    
-    # wait for the server to start
-    wait_for_start
-    # additional time to start the http server
-    sleep 2
-
-    # run test client
-    cd ../test-client
-    # run warmup phase
-    java -Dnumber.of.clients=$WARMUP_CLIENTS -Dtimeout=$TIMEOUT -jar target/quarkus-app/quarkus-run.jar
-
-    # start async profiler if needed
-    if contains_arg "-flame" "$@"; then
-        # Get the server PID
-        PID="$(jps | grep quarkus-run | cut -d ' ' -f 1)"
-        $ASYNC_PROFILER_PATH/bin/asprof start $PID
-        echo "Async profiler started for server PID: $PID"
-    fi
 
-    # run benchmark phase
-    java -Dnumber.of.clients=$TEST_CLIENTS -Dtimeout=$TIMEOUT -jar target/quarkus-app/quarkus-run.jar
+# the additional benchmarks run against each server after the variants, see Orchestrator
+PLAN=target/plan.txt
+echo "# server [server:<jvm-arg>] [build:<maven-arg>] client-args" > $PLAN
 
-    # go to project root
-    cd ../
+if contains_arg "-broadcast" "$@"; then
+    # each number of connections is reported as a separate variant
+    for clients in $BROADCAST_CLIENTS
+    do
+        echo "next -Dmode=broadcast -Dserver.path=/broadcast -Dbroadcast.publishers=$BROADCAST_PUBLISHERS -Dnumber.of.messages=$BROADCAST_MESSAGES -Dtarget.rate=$BROADCAST_RATE -Dnumber.of.clients=$clients -Dvariant=broadcast-$clients" >> $PLAN
+    done
+fi
+
+if contains_arg "-compression" "$@"; then
+    # each combination is reported as a separate variant, e.g. "deflate-compressible-4096" vs "plain-compressible-4096"
+    # both are run against a separate server instance that supports permessage-deflate, the default server does not
+    for size in $COMPRESSION_SIZES
+    do
+        for content in random compressible
+        do
+            echo "next server:-Dserver.compression=true -Dpayload.size=$size -Dpayload.content=$content -Dcompression=false -Dvariant=plain-$content-$size" >> $PLAN
+            echo "next server:-Dserver.compression=true -Dpayload.size=$size -Dpayload.content=$content -Dcompression=true -Dvariant=deflate-$content-$size" >> $PLAN
+        done
+    done
+fi
 
-    # stop async profiler if needed
-    if contains_arg "-flame" "$@"; then
-        # Get the server PID
-        PID="$(jps | grep quarkus-run | cut -d ' ' -f 1)"
-        FILE="flame_$i.html"
-        $ASYNC_PROFILER_PATH/bin/asprof stop -f $FILE -o flamegraph $PID
-        echo "Async profiler stopped for server PID: $PID, output file: $FILE"
+if contains_arg "-churn" "$@"; then
+    CHURN_ARGS="-Dmode=churn -Dchurn.rates=$CHURN_RATES -Dchurn.step-duration=$CHURN_STEP_DURATION -Dchurn.messages=$CHURN_MESSAGES -Dserver.path=/to-lower-case"
+    echo "* $CHURN_ARGS" >> $PLAN
+    # the handshake rate and latency over wss:// include the TLS handshake
+    if contains_arg "-tls" "$@"; then
+        echo "* $CHURN_ARGS -Dtls=true -Dserver.port=\${tls-port}" >> $PLAN
     fi
+fi
 
-    # wait for the server to stop
-    wait_for_stop
+if contains_arg "-idle" "$@"; then
+    echo "* -Dmode=idle -Dnumber.of.clients=$IDLE_CLIENTS -Didle.steps=$IDLE_STEPS -Dserver.path=/to-lower-case" >> $PLAN
+fi
 
-    echo "Testing $i finished..."
-done
+if contains_arg "-saturation" "$@"; then
+    echo "* -Dmode=saturation -Dsaturation.slo.p99=$SATURATION_SLO_P99 -Dsaturation.clients=$SATURATION_CLIENTS -Dsaturation.start-rate=$SATURATION_START_RATE -Dsaturation.probe-duration=$SATURATION_PROBE_DURATION -Dserver.path=/to-lower-case" >> $PLAN
+fi
 
-cd test-client
-mvn package -Dquarkus.package.main-class=summary
-java -jar target/quarkus-app/quarkus-run.jar target/results
+if contains_arg "-routes" "$@"; then
+    # the routes are generated at build time, i.e. each combination is run against a separate server instance built with
+    # the build: arguments
+    for kind in $ROUTES_KINDS
+    do
+        for count in $ROUTES_COUNTS
+        do
+            echo "next build:-Droutes=$count build:-Droutes.kind=$kind -Dmode=routes -Droutes.count=$count -Droutes.kind=$kind" >> $PLAN
+        done
+    done
+fi
 
+# build, start, warm up, benchmark and stop each server for each version
+java -Dmode=orchestrate \
+    -Dorchestrator.quarkus-versions=$(echo $QUARKUS_VERSIONS | tr ' ' ',') \
+    -Dorchestrator.servers=$(echo $SERVERS | tr ' ' ',') \
+    -Dorchestrator.variants=$(echo $VARIANTS | tr ' ' ',') \
+    -Dorchestrator.runs=$RUNS \
+    -Dorchestrator.warmup.clients=$WARMUP_CLIENTS \
+    -Dorchestrator.warmup.max-rounds=$WARMUP_MAX_ROUNDS \
+    -Dorchestrator.plan=$PLAN \
+    -Dnumber.of.clients=$TEST_CLIENTS -Dtimeout=$TIMEOUT -Dworkers=$WORKERS $JFR_ARGS $STEADY_ARGS $ORCHESTRATOR_ARGS \
+    -jar target/quarkus-app/quarkus-run.jar
 
+mvn package -Dquarkus.package.main-class=summary
+# The runs of the Gatling simulation (see the gatling module) are converted so that both load generators are compared
+if [ -d ../gatling/target/gatling ]; then
+    java -cp "target/classes:target/quarkus-app/lib/main/*" com.github.mkouba.wsperf.GatlingResults ../gatling/target/gatling
+fi
+if [ -n "$BASELINE" ]; then
+    java -jar target/quarkus-app/quarkus-run.jar target/results --baseline=$BASELINE
+else
+    java -jar target/quarkus-app/quarkus-run.jar target/results
+fi
@@ -0,0 +1,43 @@
+package com.github.mkouba.wsperf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.github.mkouba.wsperf.payload.PayloadGenerator;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Charset;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Content;
+
+/**
+ * Pre-generated payloads for the feeder; the payloads are generated by the {@link PayloadGenerator} shared with the
+ * test client, i.e. the same spec produces the same payloads. If no size is set then the constant {@code FOO} payload
+ * is used.
+ * <p>
+ * Each record contains the {@code payload} string, the {@code payloadBytes} and the {@code expected} lowercase value.
+ */
+public final class Payloads {
+
+        private Payloads() {
+        }
+
+        static List<Map<String, Object>> generate(String size, String charset, int count, long seed) {
+                List<Map<String, Object>> records = new ArrayList<>();
+                for (String payload : PayloadGenerator.generate(Optional.ofNullable(size),
+                                Charset.valueOf(charset.toUpperCase()), Content.RANDOM, count, seed)) {
+                        records.add(record(payload));
+                }
+                return records;
+        }
+
+        private static Map<String, Object> record(String payload) {
+                Map<String, Object> record = new HashMap<>();
+                record.put("payload", payload);
+                record.put("payloadBytes", payload.getBytes(StandardCharsets.UTF_8));
+                record.put("expected", payload.toLowerCase());
+                return record;
+        }
+
+}
@@ -1,19 +1,81 @@
 package com.github.mkouba.wsperf;
 
+import static io.gatling.javaapi.core.CoreDsl.bodyBytes;
 import static io.gatling.javaapi.core.CoreDsl.bodyString;
+import static io.gatling.javaapi.core.CoreDsl.constantUsersPerSec;
+import static io.gatling.javaapi.core.CoreDsl.doIfOrElse;
+import static io.gatling.javaapi.core.CoreDsl.exec;
+import static io.gatling.javaapi.core.CoreDsl.feed;
+import static io.gatling.javaapi.core.CoreDsl.group;
+import static io.gatling.javaapi.core.CoreDsl.listFeeder;
+import static io.gatling.javaapi.core.CoreDsl.pace;
 import static io.gatling.javaapi.core.CoreDsl.pause;
 import static io.gatling.javaapi.core.CoreDsl.rampUsers;
+import static io.gatling.javaapi.core.CoreDsl.rendezVous;
 import static io.gatling.javaapi.core.CoreDsl.repeat;
 import static io.gatling.javaapi.core.CoreDsl.scenario;
 import static io.gatling.javaapi.http.HttpDsl.http;
 import static io.gatling.javaapi.http.HttpDsl.ws;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import io.gatling.http.action.ws.WsInboundMessage;
+import io.gatling.javaapi.core.ActionBuilder;
+import io.gatling.javaapi.core.ChainBuilder;
+import io.gatling.javaapi.core.CheckBuilder;
+import io.gatling.javaapi.core.FeederBuilder;
+import io.gatling.javaapi.core.OpenInjectionStep;
 import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.core.Session;
 import io.gatling.javaapi.core.Simulation;
 import io.gatling.javaapi.http.HttpProtocolBuilder;
+import io.gatling.javaapi.http.WsAwaitActionBuilder;
+import io.gatling.javaapi.http.WsFrameCheck;
 
+/**
+ * The same workloads as the test client:
+ * <ul>
+ * <li>{@code mode=echo} (default) - each connection sends a message and awaits the reply; if {@code max.in.flight} is
+ * set then the messages are pipelined, i.e. a window of {@code max.in.flight} messages is sent and then all the replies
+ * are awaited,</li>
+ * <li>{@code mode=broadcast} - the first {@code broadcast.publishers} connections send messages to the
+ * {@code /broadcast} endpoint and all connections receive every message.</li>
+ * </ul>
+ * The users are injected with {@code injection=ramp} (default), i.e. {@code number.of.clients} users during
+ * {@code ramp.time} seconds, or {@code injection=constant}, i.e. {@code users.per.sec} new users per second during
+ * {@code injection.duration} seconds. If {@code target.rate} is set then each user is paced so that all users together
+ * send the given number of messages per second. Note that Gatling only throttles HTTP requests, not WebSocket frames.
+ * <p>
+ * The replies are recorded as {@code Check result} requests. The parameters of the run and the status of the server are
+ * stored in {@code wsperf.json} in the run directory so that the results can be converted with {@code GatlingResults}
+ * from the test client.
+ */
 public class ToLowerCaseSimulation extends Simulation {
 
+        static final String CHECK_NAME = "Check result";
+
+        static final String RECEIVE_GROUP = "Receive";
+
         static int numberOfClients = Integer.parseInt(System.getProperty("number.of.clients", "1000"));
 
         static int numberOfMessages = Integer.parseInt(System.getProperty("number.of.messages", "1000"));
@@ -26,33 +88,314 @@ public class ToLowerCaseSimulation extends Simulation {
 
         static String serverPath = System.getProperty("server.path", "/to-lower-case");
 
+        // Connect over wss:// - the server port must be the HTTPS port; Gatling trusts all certificates by default
+        static boolean tls = Boolean.parseBoolean(System.getProperty("tls", "false"));
+
+        // echo or broadcast
+        static String mode = System.getProperty("mode", "echo");
+
+        static int maxInFlight = Integer.parseInt(System.getProperty("max.in.flight", "1"));
+
+        static int broadcastPublishers = Integer.parseInt(System.getProperty("broadcast.publishers", "1"));
+
+        // ramp or constant
+        static String injection = System.getProperty("injection", "ramp");
+
+        static double usersPerSec = Double.parseDouble(System.getProperty("users.per.sec", "10"));
+
+        static int injectionDuration = Integer.parseInt(System.getProperty("injection.duration", "60"));
+
+        // The number of messages per second sent by all users
+        static Optional<Double> targetRate = Optional.ofNullable(System.getProperty("target.rate"))
+                        .map(Double::valueOf);
+
+        static int timeout = Integer.parseInt(System.getProperty("timeout", "30"));
+
+        // See Payloads for the supported size specs
+        static String payloadSize = System.getProperty("payload.size");
+
+        static String payloadCharset = System.getProperty("payload.charset", "ascii");
+
+        static String payloadFrame = System.getProperty("payload.frame", "text");
+
+        static int payloadCount = Integer.parseInt(System.getProperty("payload.count", "100"));
+
+        static long payloadSeed = Long.parseLong(System.getProperty("payload.seed", "1"));
+
+        // The directory where Gatling stores the runs
+        static String resultsFolder = System.getProperty("results.folder", "target/gatling");
+
+        static boolean binary = "binary".equalsIgnoreCase(payloadFrame);
+
+        static boolean broadcast = "broadcast".equals(mode);
+
+        FeederBuilder<Object> payloads = listFeeder(
+                        Payloads.generate(payloadSize, payloadCharset, payloadCount, payloadSeed)).random();
+
         HttpProtocolBuilder httpProtocol = http
-                        .baseUrl("http://" + serverHost + ":" + serverPort)
+                        .baseUrl((tls ? "https://" : "http://") + serverHost + ":" + serverPort)
                         .acceptHeader("text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
                         .doNotTrackHeader("1")
                         .acceptLanguageHeader("en-US,en;q=0.5")
                         .acceptEncodingHeader("gzip, deflate")
                         .userAgentHeader("Gatling2")
-                        .wsBaseUrl("ws://" + serverHost + ":" + serverPort);
-
-        ScenarioBuilder scn = scenario("WebSocket")
-                        .exec(
-                                        // exec(session -> session.set("id", "Gatling" + session.userId())),
-                                        ws("Connect WS").connect(serverPath),
-                                        pause(1),
-                                        repeat(numberOfMessages, "i").on(
-                                                        ws("Convert Foo")
-                                                                        .sendText("FOO")
-                                                                        .await(30).on(
-                                                                                        ws.checkTextMessage(
-                                                                                                        "Check result")
-                                                                                                        .check(bodyString()
-                                                                                                                        .is("foo")))),
-                                        ws("Close WS").close());
+                        .wsBaseUrl((tls ? "wss://" : "ws://") + serverHost + ":" + serverPort)
+                        // The subscribers of the broadcast mode collect the messages that are not awaited
+                        .wsUnmatchedInboundMessageBufferSize(
+                                        broadcast ? numberOfMessages * broadcastPublishers + 1 : 0);
+
+        // The status of the server, i.e. the response of GET /wsperf/ready
+        String serverStatus;
 
         {
-                setUp(
-                                scn.injectOpen(rampUsers(numberOfClients).during(rampTime))).protocols(httpProtocol);
+                validate();
+                setUp(workload().injectOpen(injectionProfile())).protocols(httpProtocol);
+        }
+
+        @Override
+        public void before() {
+                serverStatus = serverStatus();
+        }
+
+        @Override
+        public void after() {
+                writeRunInfo();
+        }
+
+        static void validate() {
+                if (broadcast) {
+                        if (maxInFlight > 1) {
+                                throw new IllegalStateException("max.in.flight cannot be used in the broadcast mode");
+                        }
+                        if (!"ramp".equals(injection)) {
+                                throw new IllegalStateException("The broadcast mode requires the ramp injection");
+                        }
+                        if (broadcastPublishers < 1 || broadcastPublishers > numberOfClients) {
+                                throw new IllegalStateException(
+                                                "broadcast.publishers must be between 1 and number.of.clients");
+                        }
+                } else if (!"echo".equals(mode)) {
+                        throw new IllegalStateException("Unsupported mode: " + mode);
+                }
+                if (numberOfMessages % maxInFlight != 0) {
+                        throw new IllegalStateException("number.of.messages must be a multiple of max.in.flight");
+                }
+        }
+
+        OpenInjectionStep injectionProfile() {
+                switch (injection) {
+                        case "ramp":
+                                return rampUsers(numberOfClients).during(rampTime);
+                        case "constant":
+                                return constantUsersPerSec(usersPerSec).during(injectionDuration);
+                        default:
+                                throw new IllegalStateException("Unsupported injection: " + injection);
+                }
+        }
+
+        ScenarioBuilder workload() {
+                ChainBuilder connect = exec(ws("Connect WS").connect(serverPath));
+                if (broadcast) {
+                        ChainBuilder publisher = repeat(numberOfMessages, "i")
+                                        .on(paced(1, feed(payloads).exec(publish())));
+                        return scenario("Broadcast")
+                                        .exec(
+                                                        connect,
+                                                        // All subscribers must be connected before the first message
+                                                        rendezVous(numberOfClients),
+                                                        doIfOrElse(session -> session.userId() <= broadcastPublishers)
+                                                                        .then(publisher)
+                                                                        .orElse(group(RECEIVE_GROUP).on(receive())),
+                                                        ws("Close WS").close());
+                }
+                WsFrameCheck echo = check(reply().is(session -> session.getString("expected")));
+                ChainBuilder round = maxInFlight > 1
+                                ? feed(payloads, maxInFlight).exec(window())
+                                : feed(payloads).exec(sendFrame("Convert", -1).await(timeout).on(echo));
+                return scenario("WebSocket")
+                                .exec(
+                                                connect,
+                                                pause(1),
+                                                repeat(numberOfMessages / maxInFlight, "i")
+                                                                .on(paced(maxInFlight, round)),
+                                                ws("Close WS").close());
+        }
+
+        /**
+         * @return the total number of users
+         */
+        static int users() {
+                return "constant".equals(injection) ? (int) Math.round(usersPerSec * injectionDuration)
+                                : numberOfClients;
+        }
+
+        /**
+         * If {@code target.rate} is set then each iteration of the loop takes at least the time needed to keep the
+         * rate.
+         */
+        static ChainBuilder paced(int messagesPerIteration, ChainBuilder iteration) {
+                if (targetRate.isEmpty()) {
+                        return iteration;
+                }
+                long nanos = Math.round(1_000_000_000.0 * users() * messagesPerIteration / targetRate.get());
+                return pace(Duration.ofNanos(nanos)).exec(iteration);
+        }
+
+        /**
+         * Send {@code max.in.flight} messages fed as arrays and then await all the replies. The frames are written in a
+         * single chain without any asynchronous boundary, i.e. no reply can be processed before the checks of the last
+         * send are registered. The endpoints may process the messages concurrently and so each reply is only checked to
+         * be one of the expected values of the window. The latency is measured from the last send of the window.
+         */
+        static ChainBuilder window() {
+                List<WsFrameCheck> checks = new ArrayList<>();
+                for (int i = 0; i < maxInFlight; i++) {
+                        checks.add(check(reply().in(session -> session.<String> getList("expected"))));
+                }
+                ChainBuilder chain = exec(sendFrame("Convert", 0));
+                for (int i = 1; i < maxInFlight - 1; i++) {
+                        chain = chain.exec(sendFrame("Convert", i));
+                }
+                return chain.exec(sendFrame("Convert", maxInFlight - 1).await(timeout).on(checks));
+        }
+
+        /**
+         * @param index the index of the record fed as arrays or {@code -1} if a single record was fed
+         */
+        static WsAwaitActionBuilder<?, ?> sendFrame(String name, int index) {
+                if (binary) {
+                        return ws(name).sendBytes(session -> index < 0 ? session.<byte[]> get("payloadBytes")
+                                        : session.<byte[]> getList("payloadBytes").get(index));
+                }
+                return ws(name).sendText(session -> index < 0 ? session.getString("payload")
+                                : session.<String> getList("payload").get(index));
+        }
+
+        /**
+         * @return the reply as a string, i.e. binary replies are decoded
+         */
+        static CheckBuilder.Validate<String> reply() {
+                return binary ? bodyBytes().transform(b -> new String(b, StandardCharsets.UTF_8)) : bodyString();
+        }
+
+        static WsFrameCheck check(CheckBuilder check) {
+                return binary ? ws.checkBinaryMessage(CHECK_NAME).check(check)
+                                : ws.checkTextMessage(CHECK_NAME).check(check);
+        }
+
+        /**
+         * A publisher awaits its own message, i.e. the latency of the broadcast to the sender is recorded. The messages
+         * of other publishers are ignored.
+         */
+        static ActionBuilder publish() {
+                CheckBuilder own = reply().is(session -> session.getString("expected"));
+                return sendFrame("Publish", -1).await(timeout).on(binary
+                                ? ws.checkBinaryMessage(CHECK_NAME).matching(own)
+                                : ws.checkTextMessage(CHECK_NAME).matching(own));
+        }
+
+        /**
+         * A subscriber collects the messages until all messages of all publishers are received or no message is
+         * received for {@code timeout} seconds. The {@value #RECEIVE_GROUP} group is failed if some messages are
+         * missing.
+         */
+        static ChainBuilder receive() {
+                int expected = numberOfMessages * broadcastPublishers;
+                long timeoutMillis = timeout * 1000L;
+                return exec(session -> session.set("received", 0).set("lastReceived", System.currentTimeMillis()))
+                                .asLongAs(session -> session.getInt("received") < expected
+                                                && System.currentTimeMillis()
+                                                                - session.getLong("lastReceived") < timeoutMillis)
+                                .on(pause(Duration.ofMillis(10)),
+                                                ws.processUnmatchedMessages(ToLowerCaseSimulation::received))
+                                .exec(session -> session.getInt("received") < expected ? session.markAsFailed()
+                                                : session);
+        }
+
+        static Session received(List<WsInboundMessage> messages, Session session) {
+                // Skip the greeting sent on open
+                long count = messages.stream()
+                                .filter(m -> !(m instanceof WsInboundMessage.Text)
+                                                || !((WsInboundMessage.Text) m).message().startsWith("_"))
+                                .count();
+                return count > 0
+                                ? session.set("received", session.getInt("received") + (int) count)
+                                                .set("lastReceived", System.currentTimeMillis())
+                                : session;
+        }
+
+        String serverStatus() {
+                String url = (tls ? "https://" : "http://") + serverHost + ":" + serverPort + "/wsperf/ready";
+                try {
+                        HttpClient.Builder builder = HttpClient.newBuilder()
+                                        .connectTimeout(Duration.ofSeconds(timeout));
+                        if (tls) {
+                                builder.sslContext(trustAll());
+                        }
+                        HttpResponse<String> response = builder.build()
+                                        .send(HttpRequest.newBuilder(URI.create(url)).build(), BodyHandlers.ofString());
+                        return response.statusCode() == 200 ? response.body() : null;
+                } catch (Exception e) {
+                        System.err.println("Unable to get the server status from " + url + ": " + e);
+                        return null;
+                }
+        }
+
+        static SSLContext trustAll() throws Exception {
+                SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, new TrustManager[] { new X509TrustManager() {
+
+                        @Override
+                        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                        }
+
+                        @Override
+                        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                        }
+
+                        @Override
+                        public X509Certificate[] getAcceptedIssuers() {
+                                return new X509Certificate[0];
+                        }
+                } }, new SecureRandom());
+                return context;
+        }
+
+        /**
+         * Store the parameters of the run in the latest run directory, i.e. the one that contains the current
+         * {@code simulation.log}.
+         */
+        void writeRunInfo() {
+                String prefix = getClass().getSimpleName().toLowerCase() + "-";
+                File[] runs = new File(resultsFolder)
+                                .listFiles(f -> f.isDirectory() && f.getName().startsWith(prefix)
+                                                && new File(f, "simulation.log").exists());
+                if (runs == null || runs.length == 0) {
+                        System.err.println("No run directory found in " + resultsFolder);
+                        return;
+                }
+                File run = Arrays.stream(runs).max(Comparator.comparing(File::getName)).get();
+                StringBuilder json = new StringBuilder("{");
+                json.append("\"serverPath\":\"").append(serverPath).append("\",");
+                json.append("\"mode\":\"").append(mode).append("\",");
+                json.append("\"injection\":\"").append(injection).append("\",");
+                json.append("\"numberOfClients\":").append(users()).append(',');
+                json.append("\"numberOfMessages\":").append(numberOfMessages).append(',');
+                json.append("\"maxInFlight\":").append(maxInFlight).append(',');
+                json.append("\"broadcastPublishers\":").append(broadcastPublishers).append(',');
+                targetRate.ifPresent(r -> json.append("\"targetRate\":").append(r).append(','));
+                json.append("\"tls\":").append(tls).append(',');
+                json.append("\"payload\":{\"size\":\"").append(payloadSize != null ? payloadSize : "FOO")
+                                .append("\",\"charset\":\"").append(payloadCharset)
+                                .append("\",\"frame\":\"").append(payloadFrame)
+                                .append("\",\"count\":").append(payloadSize != null ? payloadCount : 1).append("},");
+                json.append("\"serverStatus\":").append(serverStatus != null ? serverStatus : "null");
+                json.append('}');
+                try {
+                        Files.writeString(new File(run, "wsperf.json").toPath(), json);
+                } catch (IOException e) {
+                        System.err.println("Unable to write the run info: " + e);
+                }
         }
 
 }
@@ -0,0 +1,38 @@
+#!/bin/bash
+if [ -z "$QUARKUS_VERSIONS" ]; then
+    QUARKUS_VERSIONS="3.15.1 3.28.4"
+fi
+
+# Additional JMH arguments, e.g. "LoopbackBenchmark -p size=16" or "-prof gc"
+if [ -z "$JMH_ARGS" ]; then
+    JMH_ARGS=""
+fi
+
+echo "====================================================="
+echo "JMH - Quarkus versions to test: $QUARKUS_VERSIONS";
+echo "JMH args: $JMH_ARGS";
+echo "====================================================="
+
+QUARKUS_VERSIONS_ARRAY=$(echo $QUARKUS_VERSIONS);
+
+# the payloads are generated the same way as in the test client
+cd payload-generator
+mvn clean install
+cd ../
+
+for i in $QUARKUS_VERSIONS_ARRAY
+do
+    # the benchmarks execute the server classes built with the same version
+    cd websocket-server-common
+    mvn clean install -Dquarkus.platform.version=$i
+    cd ../websocket-server-next
+    mvn clean package -DskipTests -Dquarkus.platform.version=$i
+    cd ../jmh
+    mvn clean package -Dquarkus.platform.version=$i
+
+    # the results are stored in the project root, e.g. jmh_3.28.4.json
+    java -jar target/benchmarks.jar -rf json -rff ../jmh_${i}.json $JMH_ARGS
+
+    cd ../
+    echo "Testing $i finished..."
+done
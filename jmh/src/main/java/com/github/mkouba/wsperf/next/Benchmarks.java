@@ -0,0 +1,22 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.logging.Level;
+
+import org.jboss.logmanager.LogContext;
+
+/**
+ * Shared setup of the benchmarks.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * The server runs with the {@code INFO} level by default, i.e. debug messages must not be logged.
+     */
+    static void initLogging() {
+        LogContext.getLogContext().getLogger("").setLevel(Level.INFO);
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.github.mkouba.wsperf.next;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mkouba.wsperf.payload.PayloadGenerator;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Charset;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * The cost of the Netty WebSocket frame codecs used by Vert.x, i.e. decoding a masked client frame and encoding an
+ * unmasked server frame. The text frames are encoded from and decoded to a {@link String} so that the UTF-8 conversion
+ * is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+
+    // The default max frame size of the Vert.x HTTP server
+    static final int MAX_FRAME_PAYLOAD_LENGTH = 65536;
+
+    @Param({ "16", "256", "4096", "65536" })
+    int size;
+
+    @Param({ "text", "binary" })
+    String frame;
+
+    String text;
+
+    ByteBuf payload;
+
+    ByteBuf maskedFrame;
+
+    EmbeddedChannel encoder;
+
+    EmbeddedChannel decoder;
+
+    @Setup
+    public void setup() {
+        Benchmarks.initLogging();
+        text = PayloadGenerator.generate(size, Charset.ASCII);
+        payload = Unpooled.wrappedBuffer(text.getBytes(StandardCharsets.UTF_8));
+        maskedFrame = encode(frame(), true);
+        encoder = new EmbeddedChannel(new WebSocket13FrameEncoder(false));
+        decoder = new EmbeddedChannel(new WebSocket13FrameDecoder(true, false, MAX_FRAME_PAYLOAD_LENGTH));
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+        maskedFrame.release();
+    }
+
+    @Benchmark
+    public int encode() {
+        encoder.writeOutbound(frame());
+        return drain(encoder);
+    }
+
+    @Benchmark
+    public Object decode() {
+        decoder.writeInbound(maskedFrame.retainedDuplicate());
+        WebSocketFrame decoded = decoder.readInbound();
+        try {
+            return decoded instanceof TextWebSocketFrame textFrame ? textFrame.text()
+                    : decoded.content().readableBytes();
+        } finally {
+            decoded.release();
+        }
+    }
+
+    private WebSocketFrame frame() {
+        return "text".equals(frame) ? new TextWebSocketFrame(text)
+                : new BinaryWebSocketFrame(payload.retainedDuplicate());
+    }
+
+    static ByteBuf encode(WebSocketFrame frame, boolean mask) {
+        EmbeddedChannel channel = new EmbeddedChannel(new WebSocket13FrameEncoder(mask));
+        channel.writeOutbound(frame);
+        ByteBuf ret = Unpooled.buffer();
+        ByteBuf out;
+        while ((out = channel.readOutbound()) != null) {
+            ret.writeBytes(out);
+            out.release();
+        }
+        channel.finishAndReleaseAll();
+        return ret;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    static int drain(EmbeddedChannel channel) {
+        int bytes = 0;
+        ByteBuf out;
+        while ((out = channel.readOutbound()) != null) {
+            bytes += out.readableBytes();
+            out.release();
+        }
+        return bytes;
+    }
+
+}
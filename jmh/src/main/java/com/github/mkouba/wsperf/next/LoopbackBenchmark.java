@@ -0,0 +1,159 @@
+package com.github.mkouba.wsperf.next;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mkouba.wsperf.payload.PayloadGenerator;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Charset;
+import com.github.mkouba.wsperf.server.ServerMetrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A full server round trip without sockets: a masked client frame is decoded, the endpoint callback is invoked and the
+ * reply is encoded. The pipeline consists of the same Netty codecs as the server pipeline and an embedded channel is
+ * used instead of a socket.
+ * <p>
+ * The callback is either invoked directly on the channel thread ({@code event-loop}) or offloaded to a thread pool
+ * ({@code worker}), in which case the reply is written from the channel thread once the callback completes, i.e. the
+ * thread hand-off is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopbackBenchmark {
+
+    @Param({ "16", "4096" })
+    int size;
+
+    @Param({ "text", "binary" })
+    String frame;
+
+    @Param({ "event-loop", "worker" })
+    String dispatch;
+
+    ByteBuf request;
+
+    EmbeddedChannel channel;
+
+    EndpointHandler handler;
+
+    ExecutorService worker;
+
+    @Setup
+    public void setup() {
+        Benchmarks.initLogging();
+        ToLowerCaseService service = new ToLowerCaseService();
+        service.metrics = new ServerMetrics();
+        ToLowerCaseEndpoint textEndpoint = new ToLowerCaseEndpoint();
+        textEndpoint.service = service;
+        ToLowerCaseBinaryEndpoint binaryEndpoint = new ToLowerCaseBinaryEndpoint();
+        binaryEndpoint.service = service;
+
+        String text = PayloadGenerator.generate(size, Charset.ASCII);
+        request = FrameCodecBenchmark.encode("text".equals(frame) ? new TextWebSocketFrame(text)
+                : new BinaryWebSocketFrame(Unpooled.wrappedBuffer(text.getBytes(StandardCharsets.UTF_8))), true);
+        worker = "worker".equals(dispatch) ? Executors.newCachedThreadPool() : null;
+        handler = new EndpointHandler(textEndpoint, binaryEndpoint, worker);
+        channel = new EmbeddedChannel(
+                new WebSocket13FrameDecoder(true, false, FrameCodecBenchmark.MAX_FRAME_PAYLOAD_LENGTH),
+                new WebSocket13FrameEncoder(false),
+                handler);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        request.release();
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public int roundTrip() throws Exception {
+        channel.writeInbound(request.retainedDuplicate());
+        if (handler.pending != null) {
+            // Write the reply from the channel thread
+            channel.writeOutbound(handler.pending.get());
+            handler.pending = null;
+        }
+        return FrameCodecBenchmark.drain(channel);
+    }
+
+    static class EndpointHandler extends ChannelInboundHandlerAdapter {
+
+        private final ToLowerCaseEndpoint textEndpoint;
+
+        private final ToLowerCaseBinaryEndpoint binaryEndpoint;
+
+        private final ExecutorService worker;
+
+        Future<WebSocketFrame> pending;
+
+        EndpointHandler(ToLowerCaseEndpoint textEndpoint, ToLowerCaseBinaryEndpoint binaryEndpoint,
+                ExecutorService worker) {
+            this.textEndpoint = textEndpoint;
+            this.binaryEndpoint = binaryEndpoint;
+            this.worker = worker;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            try {
+                if (frame instanceof TextWebSocketFrame textFrame) {
+                    String message = textFrame.text();
+                    dispatch(ctx, () -> new TextWebSocketFrame(textEndpoint.convert(message)));
+                } else {
+                    // Vert.x copies the frame content to a heap buffer
+                    Buffer message = Buffer.buffer(ByteBufUtil.getBytes(frame.content()));
+                    dispatch(ctx, () -> new BinaryWebSocketFrame(binaryEndpoint.convert(message).getByteBuf()));
+                }
+            } finally {
+                frame.release();
+            }
+        }
+
+        private void dispatch(ChannelHandlerContext ctx, Supplier<WebSocketFrame> callback) {
+            if (worker == null) {
+                ctx.writeAndFlush(callback.get());
+            } else {
+                pending = worker.submit(callback::get);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.github.mkouba.wsperf.next;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mkouba.wsperf.payload.PayloadGenerator;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Charset;
+import com.github.mkouba.wsperf.server.ServerMetrics;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The cost of {@link ToLowerCaseService} alone, i.e. without any framework or network overhead.
+ * <p>
+ * The binary conversion is done in place; therefore, a copy of the payload is converted and the copy is part of the
+ * measurement. {@link #copyBuffer()} measures the copy alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToLowerCaseServiceBenchmark {
+
+    @Param({ "16", "256", "4096", "65536" })
+    int size;
+
+    @Param({ "ascii", "utf8" })
+    String charset;
+
+    ToLowerCaseService service;
+
+    String text;
+
+    Buffer binary;
+
+    @Setup
+    public void setup() {
+        Benchmarks.initLogging();
+        service = new ToLowerCaseService();
+        service.metrics = new ServerMetrics();
+        text = PayloadGenerator.generate(size, Charset.valueOf(charset.toUpperCase()));
+        binary = Buffer.buffer(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String convertText() {
+        return service.convert(text);
+    }
+
+    @Benchmark
+    public Buffer convertBinary() {
+        return service.convert(binary.copy());
+    }
+
+    @Benchmark
+    public Buffer copyBuffer() {
+        return binary.copy();
+    }
+
+}
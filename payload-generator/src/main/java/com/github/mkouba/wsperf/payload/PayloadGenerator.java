@@ -0,0 +1,190 @@
+package com.github.mkouba.wsperf.payload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Generates the payloads of all load generators so that the test client, the Gatling simulation and the JMH benchmarks
+ * send the same content for the same spec.
+ * <p>
+ * The size spec is one of:
+ * <ul>
+ * <li>{@code fixed:<bytes>} or just {@code <bytes>}</li>
+ * <li>{@code uniform:<min>-<max>}</li>
+ * <li>{@code lognormal:<median>,<sigma>}</li>
+ * </ul>
+ * If no size spec is set then the constant {@code FOO} payload is used. The size is clamped to {@link #MAX_SIZE}.
+ * <p>
+ * The content is either {@code random}, i.e. random characters where only the entropy coding of deflate helps, or
+ * {@code compressible}, i.e. JSON-like records built from a small vocabulary of random words, similar to the large JSON
+ * frames seen in production.
+ */
+public final class PayloadGenerator {
+
+    public static final String DEFAULT_PAYLOAD = "FOO";
+
+    // Stay well below the default max WebSocket message size of the server
+    public static final int MAX_SIZE = 128 * 1024;
+
+    // Characters that are lowercased to a character of the same UTF-8 length
+    static final String ASCII = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 ";
+    static final int[][] UTF8_RANGES = {
+            // Greek capital letters (2 bytes)
+            { 0x0391, 0x03A1 },
+            // Cyrillic capital letters (2 bytes)
+            { 0x0410, 0x042F },
+            // CJK unified ideographs (3 bytes)
+            { 0x4E00, 0x4FFF },
+            // Emoticons (4 bytes)
+            { 0x1F600, 0x1F64F }
+    };
+
+    static final int VOCABULARY_SIZE = 32;
+
+    public enum Charset {
+        ASCII,
+        UTF8
+    }
+
+    public enum Content {
+        RANDOM,
+        COMPRESSIBLE
+    }
+
+    private PayloadGenerator() {
+    }
+
+    /**
+     * @param sizeSpec
+     * @param charset
+     * @param content
+     * @param count the number of payloads; ignored if no size spec is set
+     * @param seed
+     * @return the generated payloads
+     */
+    public static List<String> generate(Optional<String> sizeSpec, Charset charset, Content content, int count,
+            long seed) {
+        List<String> payloads = new ArrayList<>();
+        if (sizeSpec.isEmpty()) {
+            payloads.add(DEFAULT_PAYLOAD);
+            return payloads;
+        }
+        Random random = new Random(seed);
+        SizeDistribution sizes = SizeDistribution.parse(sizeSpec.get());
+        List<String> vocabulary = new ArrayList<>();
+        if (content == Content.COMPRESSIBLE) {
+            for (int i = 0; i < VOCABULARY_SIZE; i++) {
+                vocabulary.add(generate(random, 3 + random.nextInt(8), charset).replace(' ', '_'));
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int size = sizes.next(random);
+            payloads.add(content == Content.COMPRESSIBLE ? generate(random, size, charset, vocabulary)
+                    : generate(random, size, charset));
+        }
+        return payloads;
+    }
+
+    /**
+     * @param size the size in bytes
+     * @param charset
+     * @return a random payload of the given size; the same size always produces the same payload
+     */
+    public static String generate(int size, Charset charset) {
+        return generate(new Random(size), Math.min(MAX_SIZE, size), charset);
+    }
+
+    /**
+     * The {@code UTF8} charset mixes ASCII with 2, 3 and 4 bytes UTF-8 characters.
+     */
+    private static String generate(Random random, int size, Charset charset) {
+        StringBuilder builder = new StringBuilder();
+        int bytes = 0;
+        while (bytes < size) {
+            int codePoint;
+            if (charset == Charset.ASCII || random.nextBoolean()) {
+                codePoint = ASCII.charAt(random.nextInt(ASCII.length()));
+            } else {
+                int[] range = UTF8_RANGES[random.nextInt(UTF8_RANGES.length)];
+                codePoint = range[0] + random.nextInt(range[1] - range[0] + 1);
+            }
+            String ch = new String(Character.toChars(codePoint));
+            int len = ch.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes + len > size) {
+                // Fill the rest with ASCII
+                codePoint = ASCII.charAt(random.nextInt(ASCII.length()));
+                ch = String.valueOf((char) codePoint);
+                len = 1;
+            }
+            builder.append(ch);
+            bytes += len;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Generate JSON-like records, e.g. <code>{"foo":"bar","baz":[1,"qux"]}</code>, until the size is reached; the rest
+     * is filled with spaces.
+     */
+    private static String generate(Random random, int size, Charset charset, List<String> vocabulary) {
+        StringBuilder builder = new StringBuilder();
+        int bytes = 0;
+        while (true) {
+            String record = "{\"" + word(random, vocabulary) + "\":\"" + word(random, vocabulary) + "\",\""
+                    + word(random, vocabulary) + "\":[" + random.nextInt(1000) + ",\"" + word(random, vocabulary)
+                    + "\"]}";
+            int len = record.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes + len > size) {
+                break;
+            }
+            builder.append(record);
+            bytes += len;
+        }
+        return builder.append(" ".repeat(size - bytes)).toString();
+    }
+
+    private static String word(Random random, List<String> vocabulary) {
+        return vocabulary.get(random.nextInt(vocabulary.size()));
+    }
+
+    interface SizeDistribution {
+
+        int next(Random random);
+
+        static SizeDistribution parse(String spec) {
+            int idx = spec.indexOf(':');
+            String type = idx == -1 ? "fixed" : spec.substring(0, idx);
+            String params = spec.substring(idx + 1);
+            try {
+                switch (type) {
+                    case "fixed":
+                        int size = Math.min(MAX_SIZE, Integer.parseInt(params));
+                        return r -> size;
+                    case "uniform":
+                        String[] range = params.split("-");
+                        int min = Integer.parseInt(range[0]);
+                        int max = Math.min(MAX_SIZE, Integer.parseInt(range[1]));
+                        if (min < 1 || min > max) {
+                            throw new IllegalArgumentException("The range must satisfy 1 <= min <= max");
+                        }
+                        return r -> min + r.nextInt(max - min + 1);
+                    case "lognormal":
+                        String[] parts = params.split(",");
+                        double mu = Math.log(Double.parseDouble(parts[0]));
+                        double sigma = Double.parseDouble(parts[1]);
+                        return r -> (int) Math.max(1,
+                                Math.min(MAX_SIZE, Math.round(Math.exp(mu + sigma * r.nextGaussian()))));
+                    default:
+                        throw new IllegalArgumentException("Unsupported payload size distribution: " + spec);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid payload size spec: " + spec, e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,370 @@
+package com.github.mkouba.wsperf;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Connection churn - new connections are opened at a constant rate, each connection waits for the greeting sent from
+ * {@code @OnOpen}, sends {@code churn.messages} messages one by one and then it's closed. Each rate from
+ * {@code churn.rates} is kept for {@code churn.step-duration} and the next step starts when all connections of the
+ * previous step are closed.
+ * <p>
+ * The handshake and open latencies are measured from the intended start of the connection so that any client lag is
+ * included. The close latency is measured from the moment the close frame is sent until the connection is closed.
+ * <p>
+ * The {@code number.of.clients} is used as the max number of connections open at the same time per client event loop.
+ * The connections above the limit wait in the client queue and the waiting time is included in the handshake latency.
+ * <p>
+ * With {@code tls=true} the handshake latency includes the TLS handshake. Note that the client TLS provider may resume
+ * the sessions of previous connections, i.e. not every handshake is a full handshake.
+ */
+public class Churn {
+
+    // A rate is sustained if at least 95% of the target rate is achieved and no upgrade failed
+    static final double SUSTAINED = 0.95;
+
+    private final TestClient client;
+
+    private final AtomicReference<String> quarkusVersion = new AtomicReference<>();
+
+    private final AtomicReference<JsonObject> tlsSession = new AtomicReference<>();
+
+    Churn(TestClient client) {
+        this.client = client;
+    }
+
+    int run() throws Exception {
+        long start = System.nanoTime();
+        String path = client.serverPath.startsWith("/") ? client.serverPath.substring(1) : client.serverPath;
+        String variantName = client.variant.orElse("churn-" + path + client.variantSuffix());
+        int numberOfLoops = client.eventLoops.orElse(Runtime.getRuntime().availableProcessors());
+        long stepNanos = client.churnStepDuration.toNanos();
+        Log.infof(
+                "Churn started [churn.rates: %s, churn.step-duration: %s, churn.messages: %s, server.host: %s, server.port: %s, server.path: %s, event-loops: %s]",
+                client.churnRates, client.churnStepDuration, client.churnMessages, client.serverHost,
+                client.serverPort, client.serverPath, numberOfLoops);
+
+        client.payloads = client.generatePayloads();
+        List<ClientLoop> loops = ClientLoop.deploy(client.vertx, numberOfLoops,
+                client.clientOptions(client.numberOfClients), client.timeout);
+
+        ServerHttpClient serverClient = null;
+        if (client.serverMetrics) {
+            serverClient = client.serverHttpClient();
+            serverClient.delete(client.serverMetricsPath);
+        }
+
+        for (ClientLoop loop : loops) {
+            loop.startCpuTime();
+        }
+        List<Step> steps = new ArrayList<>();
+        boolean failed = false;
+        for (int rate : client.churnRates) {
+            Step step = new Step(rate, (int) Math.max(1, rate * stepNanos / TimeUnit.SECONDS.toNanos(1)),
+                    stepNanos + TimeUnit.SECONDS.toNanos(client.timeout));
+            steps.add(step);
+            Log.infof("Opening %s connections at %s conn/s", step.sessions, rate);
+            step.start = System.nanoTime();
+            for (int i = 0; i < loops.size(); i++) {
+                ClientLoop loop = loops.get(i);
+                int sessions = step.sessions / loops.size() + (i < step.sessions % loops.size() ? 1 : 0);
+                if (sessions > 0) {
+                    double loopRate = (double) rate * sessions / step.sessions;
+                    loop.context.runOnContext(v -> openAtRate(loop, step, loopRate, sessions));
+                }
+            }
+            if (!step.done.await(stepNanos + TimeUnit.SECONDS.toNanos(client.timeout), TimeUnit.NANOSECONDS)) {
+                Log.warnf("%s connections not closed in time - skipping the remaining rates", step.done.getCount());
+                failed = true;
+            }
+            step.end = System.nanoTime();
+            Histogram stepHandshake = step.handshake.merge();
+            Log.infof("%s conn/s: %.1f handshakes/s achieved [handshake p50: %.1f us, p99: %.1f us, failed: %s]", rate,
+                    step.achievedRate(), LatencyStats.toMicros(stepHandshake.getValueAtPercentile(50.0)),
+                    LatencyStats.toMicros(stepHandshake.getValueAtPercentile(99.0)), step.failures.sum());
+            if (failed) {
+                break;
+            }
+        }
+
+        for (ClientLoop loop : loops) {
+            loop.stopCpuTime();
+        }
+        JsonObject metrics = null;
+        if (serverClient != null) {
+            metrics = serverClient.get(client.serverMetricsPath);
+            serverClient.close();
+        }
+
+        long timeTaken = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (failed) {
+            Log.warnf("Failed in %s ms", timeTaken);
+            return 1;
+        }
+
+        Histogram handshake = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        Histogram open = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        Histogram close = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        Histogram messages = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        long sessions = 0;
+        long failures = 0;
+        long dropped = 0;
+        long sendTime = 0;
+        double maxAchievedRate = 0;
+        long maxSustainedRate = 0;
+        long peakHandshakeRate = 0;
+        JsonArray stepsJson = new JsonArray();
+        for (Step step : steps) {
+            Histogram stepHandshake = step.handshake.merge();
+            handshake.add(stepHandshake);
+            open.add(step.open.merge());
+            close.add(step.close.merge());
+            messages.add(step.messages.merge());
+            sessions += step.sessions;
+            failures += step.failures.sum();
+            dropped += step.dropped.sum();
+            sendTime += step.end - step.start;
+            maxAchievedRate = Math.max(maxAchievedRate, step.achievedRate());
+            if (step.isSustained()) {
+                maxSustainedRate = Math.max(maxSustainedRate, step.rate);
+            }
+            peakHandshakeRate = Math.max(peakHandshakeRate, step.peakRate());
+            stepsJson.add(new JsonObject()
+                    .put("rate", step.rate)
+                    .put("sessions", step.sessions)
+                    .put("achievedRate", step.achievedRate())
+                    .put("peakRate", step.peakRate())
+                    .put("failedUpgrades", step.failures.sum())
+                    .put("dropped", step.dropped.sum())
+                    .put("sustained", step.isSustained())
+                    .put("handshake", LatencyStats.toJson(stepHandshake)));
+        }
+        Log.infof(
+                "Finished in %s ms [max sustained rate: %s conn/s, peak: %s handshakes/s, handshake p50: %.1f us, p99: %.1f us, p99.9: %.1f us, failed upgrades: %s]",
+                timeTaken, maxSustainedRate, peakHandshakeRate,
+                LatencyStats.toMicros(handshake.getValueAtPercentile(50.0)),
+                LatencyStats.toMicros(handshake.getValueAtPercentile(99.0)),
+                LatencyStats.toMicros(handshake.getValueAtPercentile(99.9)), failures);
+
+        JsonObject churn = new JsonObject();
+        churn.put("rates", new JsonArray(new ArrayList<>(client.churnRates)));
+        churn.put("stepDuration", client.churnStepDuration.toMillis());
+        churn.put("messages", client.churnMessages);
+        churn.put("sessions", sessions);
+        churn.put("failedUpgrades", failures);
+        // Connections closed by the server or the network
+        churn.put("dropped", dropped);
+        churn.put("maxSustainedRate", maxSustainedRate);
+        churn.put("peakHandshakeRate", peakHandshakeRate);
+        churn.put("open", LatencyStats.toJson(open));
+        churn.put("close", LatencyStats.toJson(close));
+        if (client.churnMessages > 0) {
+            churn.put("messageLatency", LatencyStats.toJson(messages));
+        }
+        churn.put("steps", stepsJson);
+
+        JsonObject res = new JsonObject();
+        res.put("timestamp", LocalDateTime.now().toString());
+        res.put("timeTaken", timeTaken);
+        res.put("quarkusVersion", client.quarkusVersion(quarkusVersion.get()));
+        res.put("server", client.serverType(metrics));
+        res.put("variant", variantName);
+        res.put("mode", client.mode);
+        res.put("numberOfClients", sessions);
+        res.put("numberOfMessages", client.churnMessages);
+        res.put("sendTime", TimeUnit.NANOSECONDS.toMillis(sendTime));
+        // The highest handshake rate achieved in a step
+        res.put("throughput", maxAchievedRate);
+        res.put("payload", client.payloads.toJson());
+        // The handshake latency
+        res.put("latency", LatencyStats.toJson(handshake));
+        res.put("churn", churn);
+        if (client.tls) {
+            res.put("tls", tlsSession.get());
+        }
+        res.put("eventLoops", ClientLoop.cpuUsage(loops, sendTime));
+        if (metrics != null) {
+            res.put("serverMetrics", metrics);
+        }
+        client.writeResult(res);
+        return 0;
+    }
+
+    /**
+     * The connections are opened at a constant rate, regardless of the handshake progress. The opens are driven by a
+     * periodic timer that catches up with all connections due since the start of the step.
+     */
+    private void openAtRate(ClientLoop loop, Step step, double loopRate, int sessions) {
+        double interval = TimeUnit.SECONDS.toNanos(1) / loopRate;
+        long[] scheduled = new long[1];
+        client.vertx.setPeriodic(1, id -> {
+            long due = Math.min(sessions, (long) ((System.nanoTime() - step.start) / interval) + 1);
+            for (long k = scheduled[0]; k < due; k++) {
+                open(loop, step, step.start + (long) (k * interval));
+            }
+            scheduled[0] = due;
+            if (due == sessions) {
+                client.vertx.cancelTimer(id);
+            }
+        });
+    }
+
+    private void open(ClientLoop loop, Step step, long scheduled) {
+        loop.client.connect(client.connectOptions()).onComplete(r -> {
+            long now = System.nanoTime();
+            if (r.failed()) {
+                if (step.failures.sum() == 0) {
+                    Log.errorf("Upgrade failed: %s", r.cause().toString());
+                }
+                step.failures.increment();
+                step.done.countDown();
+                return;
+            }
+            step.handshake(now, now - scheduled);
+            Session session = new Session(r.result());
+            if (client.tls) {
+                tlsSession.compareAndSet(null, client.tlsSession(session.ws));
+            }
+            session.ws.closeHandler(v -> {
+                if (session.closeStart == 0) {
+                    step.dropped.increment();
+                } else {
+                    step.close.record(System.nanoTime() - session.closeStart);
+                }
+                step.done.countDown();
+            });
+            session.ws.textMessageHandler(s -> {
+                if (s.startsWith("_")) {
+                    step.open.record(System.nanoTime() - scheduled);
+                    quarkusVersion.compareAndSet(null, s.substring(1));
+                } else {
+                    reply(step, client.validate(s));
+                }
+                next(session);
+            });
+            session.ws.binaryMessageHandler(b -> {
+                reply(step, client.validate(b));
+                next(session);
+            });
+        });
+    }
+
+    private void reply(Step step, long sent) {
+        if (sent != MessageTag.INVALID) {
+            step.messages.record(System.nanoTime() - sent);
+        }
+    }
+
+    private void next(Session session) {
+        if (session.sent < client.churnMessages) {
+            session.sent++;
+            Payload payload = client.payloads.next();
+            if (client.payloads.isBinary()) {
+                session.ws.writeBinaryMessage(MessageTag.binaryTag(System.nanoTime(), 0, payload));
+            } else {
+                session.ws.writeTextMessage(MessageTag.tag(System.nanoTime(), 0, payload));
+            }
+        } else if (session.closeStart == 0) {
+            session.closeStart = System.nanoTime();
+            session.ws.close();
+        }
+    }
+
+    static class Session {
+
+        final WebSocket ws;
+
+        int sent;
+
+        long closeStart;
+
+        Session(WebSocket ws) {
+            this.ws = ws;
+        }
+
+    }
+
+    static class Step {
+
+        final int rate;
+
+        final int sessions;
+
+        final CountDownLatch done;
+
+        final LatencyStats handshake = new LatencyStats();
+
+        final LatencyStats open = new LatencyStats();
+
+        final LatencyStats close = new LatencyStats();
+
+        final LatencyStats messages = new LatencyStats();
+
+        final LongAdder failures = new LongAdder();
+
+        final LongAdder dropped = new LongAdder();
+
+        final LongAccumulator lastHandshake = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        // The number of handshakes completed in each second of the step
+        final AtomicLongArray handshakesPerSecond;
+
+        long start;
+
+        long end;
+
+        Step(int rate, int sessions, long maxNanos) {
+            this.rate = rate;
+            this.sessions = sessions;
+            this.done = new CountDownLatch(sessions);
+            this.handshakesPerSecond = new AtomicLongArray((int) TimeUnit.NANOSECONDS.toSeconds(maxNanos) + 1);
+        }
+
+        void handshake(long now, long latencyNanos) {
+            handshake.record(latencyNanos);
+            lastHandshake.accumulate(now);
+            int second = (int) TimeUnit.NANOSECONDS.toSeconds(now - start);
+            handshakesPerSecond.incrementAndGet(Math.min(second, handshakesPerSecond.length() - 1));
+        }
+
+        /**
+         * @return the number of handshakes per second from the start of the step until the last handshake completed
+         */
+        double achievedRate() {
+            long handshakes = sessions - failures.sum();
+            if (handshakes <= 0) {
+                return 0;
+            }
+            long elapsed = Math.max(lastHandshake.get() - start, 1);
+            return (double) handshakes / elapsed * TimeUnit.SECONDS.toNanos(1);
+        }
+
+        long peakRate() {
+            long peak = 0;
+            for (int i = 0; i < handshakesPerSecond.length(); i++) {
+                peak = Math.max(peak, handshakesPerSecond.get(i));
+            }
+            return peak;
+        }
+
+        boolean isSustained() {
+            return failures.sum() == 0 && achievedRate() >= SUSTAINED * rate;
+        }
+
+    }
+
+}
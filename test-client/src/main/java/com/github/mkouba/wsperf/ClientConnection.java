@@ -0,0 +1,31 @@
+package com.github.mkouba.wsperf;
+
+import io.vertx.core.http.WebSocket;
+
+/**
+ * A client connection. The state is only accessed from the context of the client loop the connection belongs to.
+ */
+public class ClientConnection {
+
+    final WebSocket ws;
+
+    // The id of the first message sent, or -1 if the connection does not send messages
+    final long firstId;
+
+    // The number of messages sent
+    int sent;
+
+    // The number of messages sent but not replied yet
+    int inFlight;
+
+    ClientConnection(WebSocket ws, long firstId) {
+        this.ws = ws;
+        this.firstId = firstId;
+    }
+
+    @Override
+    public String toString() {
+        return ws.toString();
+    }
+
+}
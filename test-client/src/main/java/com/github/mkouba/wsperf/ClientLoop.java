@@ -0,0 +1,140 @@
+package com.github.mkouba.wsperf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.WebSocketClient;
+import io.vertx.core.http.WebSocketClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A client event loop. Connections are sharded across the loops and each connection is only used from the context of
+ * its loop.
+ */
+public class ClientLoop {
+
+    static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    final Context context;
+
+    final Thread thread;
+
+    final WebSocketClient client;
+
+    // Only accessed from the loop context
+    final List<ClientConnection> connections;
+
+    // The connections that send messages, i.e. all connections or the publishers in the broadcast mode
+    final List<ClientConnection> senders;
+
+    private long cpuTimeStart;
+
+    private long cpuTime;
+
+    ClientLoop(Context context, Thread thread, WebSocketClient client) {
+        this.context = context;
+        this.thread = thread;
+        this.client = client;
+        this.connections = new ArrayList<>();
+        this.senders = new ArrayList<>();
+    }
+
+    void startCpuTime() {
+        cpuTimeStart = THREAD_MX_BEAN.getThreadCpuTime(thread.getId());
+    }
+
+    void stopCpuTime() {
+        cpuTime = THREAD_MX_BEAN.getThreadCpuTime(thread.getId()) - cpuTimeStart;
+    }
+
+    /**
+     * Each verticle instance is assigned a different event loop context. Therefore, we deploy one verticle instance per
+     * client loop.
+     *
+     * @param vertx
+     * @param size
+     * @param options the options of the client of each loop
+     * @param timeout
+     * @return the deployed loops
+     */
+    static List<ClientLoop> deploy(Vertx vertx, int size, WebSocketClientOptions options, long timeout)
+            throws Exception {
+        List<ClientLoop> loops = new CopyOnWriteArrayList<>();
+        vertx.deployVerticle(() -> new AbstractVerticle() {
+            @Override
+            public void start() {
+                WebSocketClient client = vertx.createWebSocketClient(new WebSocketClientOptions(options));
+                loops.add(new ClientLoop(context, Thread.currentThread(), client));
+            }
+        }, new DeploymentOptions().setInstances(size))
+                .toCompletionStage()
+                .toCompletableFuture()
+                .get(timeout, TimeUnit.SECONDS);
+        long threads = loops.stream().map(l -> l.thread).distinct().count();
+        if (threads < size) {
+            Log.warnf(
+                    "%s client loops share %s event loop threads - consider increasing quarkus.vertx.event-loops-pool-size",
+                    size, threads);
+        }
+        return new ArrayList<>(loops);
+    }
+
+    /**
+     * @param loops
+     * @return the CPU time of all client event loop threads in nanoseconds
+     */
+    static long cpuTime(List<ClientLoop> loops) {
+        Map<Thread, Long> threads = new LinkedHashMap<>();
+        for (ClientLoop loop : loops) {
+            threads.put(loop.thread, loop.cpuTime);
+        }
+        return threads.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * The CPU time is reported per event loop thread, i.e. if multiple loops share the same thread the values are
+     * merged.
+     *
+     * @param loops
+     * @param wallTimeNanos
+     * @return the CPU usage of all client event loop threads
+     */
+    static JsonArray cpuUsage(List<ClientLoop> loops, long wallTimeNanos) {
+        Map<Thread, JsonObject> threads = new LinkedHashMap<>();
+        for (ClientLoop loop : loops) {
+            JsonObject thread = threads.get(loop.thread);
+            if (thread == null) {
+                thread = new JsonObject()
+                        .put("thread", loop.thread.getName())
+                        .put("connections", loop.connections.size())
+                        .put("cpuTime", TimeUnit.NANOSECONDS.toMillis(loop.cpuTime))
+                        .put("utilization", (double) loop.cpuTime / wallTimeNanos);
+                threads.put(loop.thread, thread);
+            } else {
+                thread.put("connections", thread.getInteger("connections") + loop.connections.size());
+            }
+        }
+        JsonArray ret = new JsonArray();
+        for (JsonObject thread : threads.values()) {
+            if (thread.getDouble("utilization") > 0.9) {
+                Log.warnf("Client event loop %s is saturated [utilization: %.2f] - the results may be skewed",
+                        thread.getString("thread"), thread.getDouble("utilization"));
+            }
+            ret.add(thread);
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,300 @@
+package com.github.mkouba.wsperf;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Launches the local worker processes, synchronizes the start of the send phase and merges the results.
+ * <p>
+ * Each worker is the same application launched with the same JVM arguments, a disjoint range of clients and the
+ * {@code worker.index} set. A worker connects its clients, waits for the start barrier and sends the result back to the
+ * coordinator instead of writing the result file.
+ *
+ * @see WorkerBarrier
+ */
+public class Coordinator {
+
+    // JVM arguments that are set per worker
+    static final List<String> WORKER_ARGS = List.of("-Dworkers=", "-Dnumber.of.clients=", "-Dtarget.rate=",
+            "-Dserver.metrics=", "-Dserver.jfr=", "-Dclient.local-address=", "-Dworker.index=", "-Dcoordinator.port=",
+            "-agentlib:jdwp");
+
+    // The fields that are the same for all workers, i.e. the fields of the first result are used
+    static final List<String> FIRST_RESULT_KEYS = List.of("mode", "compression", "tls", "broadcast", "routes");
+
+    private final TestClient client;
+
+    Coordinator(TestClient client) {
+        this.client = client;
+    }
+
+    int run(String... args) throws Exception {
+        int workers = client.workers;
+        if (client.numberOfClients < workers) {
+            throw new IllegalStateException("The number of clients must be greater than or equal to workers");
+        }
+        long start = System.nanoTime();
+        Log.infof("Coordinator started [workers: %s, number-of-clients: %s, number-of-messages: %s]", workers,
+                client.numberOfClients, client.numberOfMessages);
+
+        File logsDir = new File("target/workers");
+        Files.createDirectories(logsDir.toPath());
+
+        List<Worker> running = new ArrayList<>();
+        try (ServerSocket barrier = new ServerSocket(client.coordinatorPort)) {
+            barrier.setSoTimeout((int) TimeUnit.SECONDS.toMillis(client.timeout));
+
+            int from = 0;
+            for (int i = 0; i < workers; i++) {
+                int clients = client.numberOfClients / workers + (i < client.numberOfClients % workers ? 1 : 0);
+                Worker worker = new Worker(i, from, clients, localAddress(i));
+                worker.process = launch(worker, barrier.getLocalPort(), new File(logsDir, "worker-" + i + ".log"),
+                        args);
+                running.add(worker);
+                from += clients;
+            }
+
+            // Wait until all workers connected their clients
+            for (int i = 0; i < workers; i++) {
+                Socket socket = barrier.accept();
+                socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(client.timeout));
+                WorkerBarrier connection = new WorkerBarrier(socket);
+                int index = connection.ready();
+                running.get(index).connection = connection;
+                Log.infof("Worker %s ready", index);
+            }
+
+            ServerHttpClient serverClient = null;
+            if (client.serverMetrics || client.serverJfr) {
+                serverClient = client.serverHttpClient();
+            }
+            if (client.serverMetrics) {
+                serverClient.delete(client.serverMetricsPath);
+            }
+            if (client.serverJfr) {
+                serverClient.post(client.serverJfrPath);
+            }
+
+            Log.infof("All %s workers ready - starting the run", workers);
+            for (Worker worker : running) {
+                worker.connection.go();
+            }
+            for (Worker worker : running) {
+                worker.result = worker.connection.result();
+                worker.connection.close();
+                worker.exitCode = worker.process.waitFor();
+                if (worker.result == null || worker.exitCode != 0) {
+                    Log.warnf("Worker %s failed [exit code: %s] - see %s", worker.index, worker.exitCode,
+                            new File(logsDir, "worker-" + worker.index + ".log"));
+                }
+            }
+
+            JsonObject recording = null;
+            if (client.serverJfr) {
+                recording = serverClient.json(HttpMethod.DELETE, client.serverJfrPath);
+            }
+            JsonObject metrics = null;
+            if (client.serverMetrics) {
+                metrics = serverClient.get(client.serverMetricsPath);
+            }
+            if (serverClient != null) {
+                serverClient.close();
+            }
+
+            long timeTaken = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (running.stream().anyMatch(w -> w.result == null)) {
+                Log.warnf("Failed in %s ms", timeTaken);
+                return 1;
+            }
+
+            JsonObject res = merge(running, timeTaken, metrics);
+            if (recording != null) {
+                res.put("jfr", client.analyzeRecording(recording, res.getLong("deliveries")));
+            }
+            JsonObject latency = res.getJsonObject("latency");
+            Log.infof("Finished in %s ms [latency p50: %.1f us, p99: %.1f us, p99.9: %.1f us, max: %.1f us]",
+                    timeTaken, latency.getDouble("p50"), latency.getDouble("p99"), latency.getDouble("p99.9"),
+                    latency.getDouble("max"));
+            client.writeResult(res);
+            return 0;
+        } finally {
+            for (Worker worker : running) {
+                if (worker.process != null && worker.process.isAlive()) {
+                    worker.process.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the results of the workers. The latency histograms, the counters and the CPU time are summed up, the
+     * throughput is the sum of the actual deliveries divided by the longest send time. The workers measure the bytes on
+     * the wire of the whole network interface at the same time, i.e. the max is used. The other fields are the same for
+     * all workers and are taken from the first result.
+     *
+     * @param metrics the server metrics or {@code null}
+     */
+    JsonObject merge(List<Worker> workers, long timeTaken, JsonObject metrics) {
+        JsonObject first = workers.get(0).result;
+        Histogram histogram = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        long writeQueueFull = 0;
+        long targetRate = 0;
+        long sendTime = 0;
+        long deliveries = 0;
+        long clientCpuTime = 0;
+        long wireBytes = -1;
+        JsonArray eventLoops = new JsonArray();
+        JsonArray workersInfo = new JsonArray();
+        List<JsonArray> timeSeries = new ArrayList<>();
+        for (Worker worker : workers) {
+            JsonObject result = worker.result;
+            histogram.add(LatencyStats.decode(result.getJsonObject("latency").getString("histogram")));
+            writeQueueFull += result.getLong("writeQueueFull", 0L);
+            targetRate += result.getLong("targetRate", 0L);
+            deliveries += result.getLong("deliveries", 0L);
+            // The workers start sending at the same time
+            sendTime = Math.max(sendTime, result.getLong("sendTime"));
+            for (Object loop : result.getJsonArray("eventLoops")) {
+                JsonObject thread = (JsonObject) loop;
+                clientCpuTime += thread.getLong("cpuTime", 0L);
+                eventLoops.add(thread.copy().put("worker", worker.index));
+            }
+            JsonObject wire = result.getJsonObject("wire");
+            if (wire != null) {
+                wireBytes = Math.max(wireBytes, wire.getLong("bytes"));
+            }
+            JsonObject info = new JsonObject()
+                    .put("index", worker.index)
+                    .put("clients", worker.from + "-" + (worker.from + worker.clients - 1))
+                    .put("timeTaken", result.getLong("timeTaken"))
+                    .put("deliveries", result.getLong("deliveries", 0L));
+            if (worker.localAddress != null) {
+                info.put("localAddress", worker.localAddress);
+            }
+            JsonObject workerTimeSeries = result.getJsonObject("timeSeries");
+            if (workerTimeSeries != null) {
+                timeSeries.add(workerTimeSeries.getJsonArray("intervals"));
+                info.put("timeSeries", workerTimeSeries.getString("file"));
+            }
+            workersInfo.add(info);
+        }
+        JsonObject res = new JsonObject();
+        res.put("timestamp", LocalDateTime.now().toString());
+        res.put("timeTaken", timeTaken);
+        res.put("quarkusVersion", first.getString("quarkusVersion"));
+        res.put("server", client.serverType(metrics));
+        res.put("variant", first.getString("variant"));
+        res.put("numberOfClients", client.numberOfClients);
+        res.put("numberOfMessages", client.numberOfMessages);
+        res.put("sendTime", sendTime);
+        res.put("throughput", sendTime > 0 ? 1000.0 * deliveries / sendTime : 0.0);
+        res.put("deliveries", deliveries);
+        if (client.targetRate.isPresent()) {
+            res.put("targetRate", targetRate);
+        }
+        if (client.maxInFlight.isPresent()) {
+            res.put("maxInFlight", client.maxInFlight.get());
+            res.put("writeQueueFull", writeQueueFull);
+        }
+        res.put("payload", first.getJsonObject("payload"));
+        for (String key : FIRST_RESULT_KEYS) {
+            if (first.containsKey(key)) {
+                res.put(key, first.getValue(key));
+            }
+        }
+        if (wireBytes >= 0) {
+            res.put("wire", WireBytes.toJson(first.getJsonObject("wire").getString("interface"), 0, wireBytes,
+                    deliveries));
+        }
+        res.put("latency", LatencyStats.toJson(histogram));
+        res.put("eventLoops", eventLoops);
+        res.put("cpuPerMessage",
+                TestClient.cpuPerMessage(TimeUnit.MILLISECONDS.toNanos(clientCpuTime), metrics, deliveries));
+        if (metrics != null) {
+            res.put("serverMetrics", metrics);
+        }
+        res.put("workers", workersInfo);
+        if (timeSeries.size() == workers.size()) {
+            client.addTimeSeries(res, TimeSeries.toJson(TimeSeries.merge(timeSeries), client.steadyStateWindow,
+                    client.steadyStateTolerance).put("interval", client.timeSeriesInterval.toMillis()));
+        }
+        return res;
+    }
+
+    private String localAddress(int index) {
+        if (client.workerLocalAddresses.isPresent()) {
+            List<String> addresses = client.workerLocalAddresses.get();
+            return addresses.get(index % addresses.size());
+        }
+        return client.clientLocalAddress.orElse(null);
+    }
+
+    private Process launch(Worker worker, int barrierPort, File log, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (WORKER_ARGS.stream().noneMatch(arg::startsWith)) {
+                command.add(arg);
+            }
+        }
+        command.add("-Dworker.index=" + worker.index);
+        command.add("-Dcoordinator.port=" + barrierPort);
+        command.add("-Dnumber.of.clients=" + worker.clients);
+        command.add("-Dserver.metrics=false");
+        command.add("-Dserver.jfr=false");
+        if (client.targetRate.isPresent()) {
+            // The rate is split across the workers according to the number of clients
+            command.add("-Dtarget.rate="
+                    + Math.max(1,
+                            Math.round((double) client.targetRate.get() * worker.clients / client.numberOfClients)));
+        }
+        if (worker.localAddress != null) {
+            command.add("-Dclient.local-address=" + worker.localAddress);
+        }
+        command.add("-jar");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(List.of(args));
+        Log.debugf("Launching worker %s: %s", worker.index, command);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+    }
+
+    static class Worker {
+
+        final int index;
+        final int from;
+        final int clients;
+        final String localAddress;
+
+        Process process;
+        WorkerBarrier connection;
+        JsonObject result;
+        int exitCode;
+
+        Worker(int index, int from, int clients, String localAddress) {
+            this.index = index;
+            this.from = from;
+            this.clients = clients;
+            this.localAddress = localAddress;
+        }
+
+    }
+
+}
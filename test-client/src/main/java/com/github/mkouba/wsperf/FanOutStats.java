@@ -0,0 +1,74 @@
+package com.github.mkouba.wsperf;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Broadcast deliveries. A published message is identified by the message id from its tag, i.e. a number between
+ * {@code 0} and the number of published messages. Each thread, i.e. each event loop, keeps the highest delivery
+ * latency per message in a preallocated array. The arrays are only merged when the run is finished so that the time
+ * until the last subscriber received a message can be computed without any synchronization or allocation on the hot
+ * path.
+ */
+public class FanOutStats {
+
+    private final int messages;
+
+    private final List<long[]> deliveries = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<long[]> delivery;
+
+    /**
+     * @param messages the number of published messages
+     */
+    FanOutStats(int messages) {
+        this.messages = messages;
+        this.delivery = ThreadLocal.withInitial(() -> {
+            long[] max = new long[messages];
+            // A message that was not delivered on this thread
+            Arrays.fill(max, -1);
+            deliveries.add(max);
+            return max;
+        });
+    }
+
+    /**
+     * @param id the message id
+     * @param latencyNanos
+     */
+    void record(long id, long latencyNanos) {
+        if (id < 0 || id >= messages) {
+            return;
+        }
+        long[] max = delivery.get();
+        if (latencyNanos > max[(int) id]) {
+            max[(int) id] = latencyNanos;
+        }
+    }
+
+    /**
+     * @return the histogram of the latencies of the last delivery of each message
+     */
+    Histogram lastDelivery() {
+        long[] merged = new long[messages];
+        Arrays.fill(merged, -1);
+        for (long[] max : deliveries) {
+            for (int i = 0; i < messages; i++) {
+                if (max[i] > merged[i]) {
+                    merged[i] = max[i];
+                }
+            }
+        }
+        Histogram result = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        for (long latency : merged) {
+            if (latency >= 0) {
+                result.recordValue(latency);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.github.mkouba.wsperf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import io.quarkus.runtime.annotations.QuarkusMain;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Converts the runs of the Gatling {@code ToLowerCaseSimulation} to the result format of the test client so that both
+ * load generators show up in the {@link SummaryTable}. The server of a converted result is suffixed with
+ * {@code -gatling}, i.e. the servers table of a variant compares the test client with Gatling.
+ * <p>
+ * A run is read from the {@code simulation.log} and the {@code wsperf.json} written by the simulation. The latency is
+ * the response time of the {@code Check result} requests; Gatling only records milliseconds. In the broadcast mode each
+ * published message is assumed to be delivered to all publishers and to all subscribers whose {@code Receive} group
+ * succeeded.
+ * <p>
+ * A converted run contains {@code result.json}, i.e. it is not converted again.
+ */
+@QuarkusMain(name = "gatling")
+public class GatlingResults {
+
+    static final String CHECK_NAME = "Check result";
+
+    static final String RECEIVE_GROUP = "Receive";
+
+    static final String SUFFIX = "-gatling";
+
+    /**
+     * The arguments are run directories or directories that contain run directories, e.g.
+     * {@code gatling/target/gatling}. Options:
+     * <ul>
+     * <li>{@code --results-dir=<dir>} - the directory the results are written to; {@code target/results} by
+     * default</li>
+     * <li>{@code --quarkus-version=<version>} - overrides the version reported by the server</li>
+     * <li>{@code --server=<server>} - overrides the server reported by the server</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        List<File> runs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int idx = arg.indexOf('=');
+                if (idx == -1) {
+                    throw new IllegalArgumentException("Invalid option: " + arg);
+                }
+                options.put(arg.substring(2, idx), arg.substring(idx + 1));
+                continue;
+            }
+            File file = new File(arg);
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException("Not a directory: " + file);
+            }
+            if (isRun(file)) {
+                runs.add(file);
+            } else {
+                Arrays.stream(file.listFiles(GatlingResults::isRun)).sorted().forEach(runs::add);
+            }
+        }
+        String resultsDir = options.getOrDefault("results-dir", "target/results");
+        for (File run : runs) {
+            File converted = new File(run, "result.json");
+            if (converted.exists()) {
+                System.out.printf("Skipping converted run %s%n", run);
+                continue;
+            }
+            if (!new File(run, "wsperf.json").isFile()) {
+                // E.g. the simulation was interrupted
+                System.out.printf("Skipping incomplete run %s%n", run);
+                continue;
+            }
+            JsonObject result = convert(run, options);
+            File file = TestClient.writeResult(resultsDir, result);
+            Files.writeString(converted.toPath(), result.toString());
+            System.out.printf("Run %s converted to %s%n", run, file);
+        }
+    }
+
+    static boolean isRun(File dir) {
+        return dir.isDirectory() && new File(dir, "simulation.log").isFile();
+    }
+
+    static JsonObject convert(File run, Map<String, String> options) throws IOException {
+        JsonObject info = new JsonObject(
+                Files.readString(new File(run, "wsperf.json").toPath(), StandardCharsets.UTF_8));
+        JsonObject status = info.getJsonObject("serverStatus", new JsonObject());
+        String quarkusVersion = options.getOrDefault("quarkus-version", status.getString("quarkusVersion"));
+        if (quarkusVersion == null) {
+            throw new IllegalStateException("Unknown Quarkus version of " + run + " - use --quarkus-version");
+        }
+
+        long runStart = -1;
+        long lastUserEnd = -1;
+        int users = 0;
+        long firstSend = Long.MAX_VALUE;
+        long lastReply = -1;
+        long ko = 0;
+        int subscribers = 0;
+        int failedSubscribers = 0;
+        Histogram histogram = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        for (String line : Files.readAllLines(new File(run, "simulation.log").toPath(), StandardCharsets.UTF_8)) {
+            // RUN, USER, REQUEST and GROUP records separated by tabs
+            String[] fields = line.split("\t");
+            switch (fields[0]) {
+                case "RUN":
+                    runStart = Long.parseLong(fields[3]);
+                    break;
+                case "USER":
+                    if ("START".equals(fields[2])) {
+                        users++;
+                    } else {
+                        lastUserEnd = Math.max(lastUserEnd, Long.parseLong(fields[3]));
+                    }
+                    break;
+                case "REQUEST":
+                    // REQUEST, groups, name, start, end, status, message
+                    if (CHECK_NAME.equals(fields[2])) {
+                        long start = Long.parseLong(fields[3]);
+                        long end = Long.parseLong(fields[4]);
+                        if ("OK".equals(fields[5])) {
+                            histogram.recordValue(TimeUnit.MILLISECONDS.toNanos(end - start));
+                            firstSend = Math.min(firstSend, start);
+                            lastReply = Math.max(lastReply, end);
+                        } else {
+                            ko++;
+                        }
+                    }
+                    break;
+                case "GROUP":
+                    // GROUP, groups, start, end, cumulated response time, status
+                    if (RECEIVE_GROUP.equals(fields[1])) {
+                        if ("OK".equals(fields[5])) {
+                            subscribers++;
+                            lastReply = Math.max(lastReply, Long.parseLong(fields[3]));
+                        } else {
+                            failedSubscribers++;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        long messages = histogram.getTotalCount();
+        if (messages == 0) {
+            throw new IllegalStateException("No successful " + CHECK_NAME + " found in " + run);
+        }
+        boolean broadcast = "broadcast".equals(info.getString("mode"));
+        int publishers = info.getInteger("broadcastPublishers", 1);
+        long deliveries = broadcast ? messages * (publishers + subscribers) : messages;
+        long sendTime = Math.max(1, lastReply - firstSend);
+        String serverPath = info.getString("serverPath");
+
+        JsonObject res = new JsonObject();
+        res.put("timestamp",
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(runStart), ZoneId.systemDefault()).toString());
+        res.put("timeTaken", lastUserEnd - runStart);
+        res.put("quarkusVersion", quarkusVersion);
+        res.put("server", options.getOrDefault("server", status.getString("server", "next")) + SUFFIX);
+        res.put("variant", (serverPath.startsWith("/") ? serverPath.substring(1) : serverPath)
+                + (info.getBoolean("tls", false) ? "-tls" : ""));
+        res.put("generator", "gatling");
+        res.put("numberOfClients", users);
+        res.put("numberOfMessages", info.getInteger("numberOfMessages"));
+        res.put("sendTime", sendTime);
+        res.put("throughput", (double) deliveries / sendTime * TimeUnit.SECONDS.toMillis(1));
+        if (info.containsKey("targetRate")) {
+            res.put("targetRate", info.getDouble("targetRate"));
+        }
+        if (info.getInteger("maxInFlight", 1) > 1) {
+            res.put("maxInFlight", info.getInteger("maxInFlight"));
+        }
+        res.put("payload", info.getJsonObject("payload"));
+        JsonObject latency = LatencyStats.toJson(histogram);
+        latency.put("resolution", "ms");
+        res.put("latency", latency);
+        if (broadcast) {
+            res.put("mode", "broadcast");
+            res.put("broadcast", new JsonObject()
+                    .put("publishers", publishers)
+                    .put("subscribers", publishers + subscribers)
+                    .put("failedSubscribers", failedSubscribers)
+                    .put("messages", messages)
+                    .put("deliveries", deliveries));
+        }
+        res.put("gatling", new JsonObject()
+                .put("run", run.getName())
+                .put("injection", info.getString("injection"))
+                .put("ko", ko));
+        return res;
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.github.mkouba.wsperf;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Idle connection density - the number of open connections is increased to {@code number.of.clients} in
+ * {@code idle.steps} steps. The connections do not send any messages, except for the optional pings. At each step, the
+ * connections are held for {@code idle.hold} and then the server memory is sampled after a full GC.
+ * <p>
+ * The memory per connection is computed from the difference to the sample taken before any connection was opened.
+ */
+public class Idle {
+
+    // The memory metrics the curve is computed for
+    static final List<String> MEMORY = List.of("heapUsed", "rss", "directBuffers", "nettyDirect");
+
+    private final TestClient client;
+
+    private final AtomicReference<String> quarkusVersion = new AtomicReference<>();
+
+    private final LongAdder pings = new LongAdder();
+
+    private final LongAdder pongs = new LongAdder();
+
+    private volatile boolean closing;
+
+    Idle(TestClient client) {
+        this.client = client;
+    }
+
+    int run() throws Exception {
+        long start = System.nanoTime();
+        String path = client.serverPath.startsWith("/") ? client.serverPath.substring(1) : client.serverPath;
+        String variantName = client.variant.orElse("idle-" + path + client.variantSuffix());
+        int numberOfLoops = Math.min(client.numberOfClients,
+                client.eventLoops.orElse(Runtime.getRuntime().availableProcessors()));
+        Log.infof(
+                "Idle started [number-of-clients: %s, idle.steps: %s, idle.hold: %s, idle.ping-interval: %s, server.host: %s, server.port: %s, server.path: %s, event-loops: %s]",
+                client.numberOfClients, client.idleSteps, client.idleHold, client.idlePingInterval.orElse(null),
+                client.serverHost, client.serverPort, client.serverPath, numberOfLoops);
+
+        List<ClientLoop> loops = ClientLoop.deploy(client.vertx, numberOfLoops,
+                client.clientOptions(client.numberOfClients), client.timeout);
+        ServerHttpClient serverClient = client.serverHttpClient();
+        String memoryPath = client.serverMemoryPath + "?gc=true";
+        JsonObject baseline = serverClient.get(memoryPath);
+        if (baseline == null) {
+            serverClient.close();
+            Log.warnf("Server memory not available at %s", client.serverMemoryPath);
+            return 1;
+        }
+
+        if (client.idlePingInterval.isPresent()) {
+            long interval = client.idlePingInterval.get().toMillis();
+            for (ClientLoop loop : loops) {
+                // The timer is fired on the loop context
+                loop.context.runOnContext(v -> client.vertx.setPeriodic(interval, id -> {
+                    if (closing) {
+                        client.vertx.cancelTimer(id);
+                        return;
+                    }
+                    for (ClientConnection connection : loop.connections) {
+                        connection.ws.writePing(Buffer.buffer());
+                        pings.increment();
+                    }
+                }));
+            }
+        }
+
+        JsonArray curve = new JsonArray();
+        int connected = 0;
+        boolean failed = false;
+        for (int step = 1; step <= client.idleSteps; step++) {
+            int target = (int) ((long) client.numberOfClients * step / client.idleSteps);
+            if (!connect(loops, connected, target)) {
+                Log.warnf("Unable to connect %s clients", target);
+                failed = true;
+                break;
+            }
+            connected = target;
+            Log.infof("%s clients connected - holding for %s", connected, client.idleHold);
+            TimeUnit.MILLISECONDS.sleep(client.idleHold.toMillis());
+            JsonObject sample = serverClient.get(memoryPath);
+            if (sample == null) {
+                failed = true;
+                break;
+            }
+            JsonObject point = new JsonObject().put("connections", connected);
+            for (String metric : MEMORY) {
+                long value = sample.getLong(metric, -1L);
+                long base = baseline.getLong(metric, -1L);
+                point.put(metric, value);
+                if (value >= 0 && base >= 0) {
+                    point.put(metric + "PerConnection", (double) (value - base) / connected);
+                }
+            }
+            curve.add(point);
+            Log.infof("%s connections [heap: %.0f B/conn, rss: %.0f B/conn, direct: %.0f B/conn]", connected,
+                    point.getDouble("heapUsedPerConnection", -1.0), point.getDouble("rssPerConnection", -1.0),
+                    point.getDouble("directBuffersPerConnection", -1.0));
+        }
+        serverClient.close();
+
+        // Close all clients
+        closing = true;
+        Log.infof("Closing %s clients", connected);
+        CountDownLatch closedLatch = new CountDownLatch(connected);
+        for (ClientLoop loop : loops) {
+            loop.context.runOnContext(v -> {
+                for (ClientConnection connection : loop.connections) {
+                    connection.ws.close().onComplete(r -> closedLatch.countDown());
+                }
+            });
+        }
+        if (!closedLatch.await(client.timeout, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Unable to close all clients...");
+        }
+
+        long timeTaken = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (failed) {
+            Log.warnf("Failed in %s ms", timeTaken);
+            return 1;
+        }
+        Log.infof("Finished in %s ms", timeTaken);
+
+        JsonObject idle = new JsonObject();
+        idle.put("steps", client.idleSteps);
+        idle.put("hold", client.idleHold.toMillis());
+        if (client.idlePingInterval.isPresent()) {
+            idle.put("pingInterval", client.idlePingInterval.get().toMillis());
+            idle.put("pings", pings.sum());
+            idle.put("pongs", pongs.sum());
+        }
+        idle.put("baseline", baseline);
+        idle.put("curve", curve);
+
+        JsonObject res = new JsonObject();
+        res.put("timestamp", LocalDateTime.now().toString());
+        res.put("timeTaken", timeTaken);
+        res.put("quarkusVersion", client.quarkusVersion(quarkusVersion.get()));
+        res.put("server", client.serverType(baseline));
+        res.put("variant", variantName);
+        res.put("mode", client.mode);
+        res.put("numberOfClients", client.numberOfClients);
+        res.put("numberOfMessages", 0);
+        res.put("idle", idle);
+        client.writeResult(res);
+        return 0;
+    }
+
+    /**
+     * Open the connections from {@code from} (inclusive) to {@code to} (exclusive); the connections are sharded
+     * round-robin across the client event loops.
+     *
+     * @return {@code true} if all connections were opened in time
+     */
+    private boolean connect(List<ClientLoop> loops, int from, int to) throws InterruptedException {
+        CountDownLatch connectedLatch = new CountDownLatch(to - from);
+        for (int i = from; i < to; i++) {
+            ClientLoop loop = loops.get(i % loops.size());
+            loop.context.runOnContext(v -> {
+                loop.client.connect(client.connectOptions())
+                        .onComplete(r -> {
+                            if (r.succeeded()) {
+                                WebSocket ws = r.result();
+                                ws.textMessageHandler(s -> {
+                                    if (s.startsWith("_")) {
+                                        quarkusVersion.compareAndSet(null, s.substring(1));
+                                    }
+                                });
+                                ws.pongHandler(b -> pongs.increment());
+                                loop.connections.add(new ClientConnection(ws, -1));
+                                connectedLatch.countDown();
+                            } else {
+                                Log.errorf("Unable to connect: %s", r.cause().toString());
+                            }
+                        });
+            });
+        }
+        return connectedLatch.await(client.timeout, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.github.mkouba.wsperf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Extracts the allocation and GC profile from a JFR recording of the server.
+ * <p>
+ * The allocated bytes are estimated from the {@code jdk.ObjectAllocationSample} events, i.e. the sum of the sample
+ * weights; the allocations of the JFR recorder itself are ignored. The allocation site is the first frame outside the
+ * JDK. The GC pauses are taken from the
+ * {@code jdk.GCPhasePause} events.
+ */
+public final class JfrAnalyzer {
+
+    static final int TOP_SITES = 10;
+
+    private JfrAnalyzer() {
+    }
+
+    /**
+     * @param file
+     * @param messages the number of messages processed during the recording
+     * @return the profile
+     */
+    static JsonObject analyze(Path file, long messages) throws IOException {
+        Instant first = null;
+        Instant last = null;
+        long allocated = 0;
+        Map<String, Long> sites = new HashMap<>();
+        List<Long> pauses = new ArrayList<>();
+        long collections = 0;
+        try (RecordingFile recording = new RecordingFile(file)) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                if (first == null || event.getStartTime().isBefore(first)) {
+                    first = event.getStartTime();
+                }
+                if (last == null || event.getEndTime().isAfter(last)) {
+                    last = event.getEndTime();
+                }
+                switch (event.getEventType().getName()) {
+                    case "jdk.ObjectAllocationSample" -> {
+                        if (isRecorder(event)) {
+                            continue;
+                        }
+                        long weight = event.getLong("weight");
+                        allocated += weight;
+                        sites.merge(site(event), weight, Long::sum);
+                    }
+                    case "jdk.GCPhasePause" -> pauses.add(event.getDuration().toNanos());
+                    case "jdk.GarbageCollection" -> collections++;
+                    default -> {
+                    }
+                }
+            }
+        }
+        long duration = first != null ? Duration.between(first, last).toNanos() : 0;
+
+        JsonObject json = new JsonObject();
+        json.put("file", file.toString());
+        json.put("duration", TimeUnit.NANOSECONDS.toMillis(duration));
+        json.put("allocated", allocated);
+        json.put("allocationRate", duration > 0 ? (double) allocated / duration * TimeUnit.SECONDS.toNanos(1) : 0.0);
+        if (messages > 0) {
+            json.put("bytesPerMessage", (double) allocated / messages);
+        }
+
+        Collections.sort(pauses);
+        long totalPause = pauses.stream().mapToLong(Long::longValue).sum();
+        json.put("gc", new JsonObject()
+                .put("unit", "ms")
+                .put("collections", collections)
+                .put("pauses", pauses.size())
+                .put("total", toMillis(totalPause))
+                .put("p50", toMillis(percentile(pauses, 50.0)))
+                .put("p99", toMillis(percentile(pauses, 99.0)))
+                .put("max", toMillis(pauses.isEmpty() ? 0 : pauses.get(pauses.size() - 1))));
+
+        long total = allocated;
+        JsonArray top = new JsonArray();
+        sites.entrySet().stream()
+                .sorted(Map.Entry.<String, Long> comparingByValue().reversed())
+                .limit(TOP_SITES)
+                .forEach(e -> top.add(new JsonObject()
+                        .put("site", e.getKey())
+                        .put("bytes", e.getValue())
+                        .put("percent", 100.0 * e.getValue() / total)));
+        json.put("allocationSites", top);
+        return json;
+    }
+
+    /**
+     * @return {@code <allocated class> <- <class>.<method>:<line>} of the first frame outside the JDK
+     */
+    static String site(RecordedEvent event) {
+        String type = event.getClass("objectClass").getName();
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return type;
+        }
+        RecordedFrame site = stackTrace.getFrames().get(0);
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String name = frame.getMethod().getType().getName();
+            if (!name.startsWith("java.") && !name.startsWith("jdk.") && !name.startsWith("sun.")) {
+                site = frame;
+                break;
+            }
+        }
+        return type + " <- " + site.getMethod().getType().getName() + "." + site.getMethod().getName() + ":"
+                + site.getLineNumber();
+    }
+
+    static boolean isRecorder(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        return stackTrace != null && stackTrace.getFrames().stream()
+                .anyMatch(f -> f.getMethod().getType().getName().startsWith("jdk.jfr."));
+    }
+
+    static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, idx));
+    }
+
+    static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.github.mkouba.wsperf;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Round-trip latencies recorded into one histogram per thread, i.e. per event loop. The histograms are only merged when
+ * the run is finished so that the hot path does not need any synchronization.
+ */
+public class LatencyStats {
+
+    static final int SIGNIFICANT_DIGITS = 3;
+
+    private final List<Histogram> histograms = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<Histogram> histogram = ThreadLocal.withInitial(() -> {
+        Histogram h = new Histogram(SIGNIFICANT_DIGITS);
+        histograms.add(h);
+        return h;
+    });
+
+    void record(long latencyNanos) {
+        histogram.get().recordValue(latencyNanos);
+    }
+
+    Histogram merge() {
+        Histogram result = new Histogram(SIGNIFICANT_DIGITS);
+        for (Histogram h : histograms) {
+            result.add(h);
+        }
+        return result;
+    }
+
+    static JsonObject toJson(Histogram histogram) {
+        JsonObject json = new JsonObject();
+        json.put("unit", "us");
+        json.put("count", histogram.getTotalCount());
+        json.put("min", toMicros(histogram.getMinValue()));
+        json.put("mean", toMicros(histogram.getMean()));
+        json.put("p50", toMicros(histogram.getValueAtPercentile(50.0)));
+        json.put("p90", toMicros(histogram.getValueAtPercentile(90.0)));
+        json.put("p99", toMicros(histogram.getValueAtPercentile(99.0)));
+        json.put("p99.9", toMicros(histogram.getValueAtPercentile(99.9)));
+        json.put("max", toMicros(histogram.getMaxValue()));
+        json.put("histogram", encode(histogram));
+        return json;
+    }
+
+    static String encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        histogram.encodeIntoCompressedByteBuffer(buffer);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    static Histogram decode(String value) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(value)), 0);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unable to decode histogram: " + value, e);
+        }
+    }
+
+    static double toMicros(double nanos) {
+        return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.github.mkouba.wsperf;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Each message sent to the server is tagged with the send timestamp, the index of the payload and the message id, i.e.
+ * {@code <nanoTime>:<payloadIndex>:<messageId>:<payload>}. The tag only contains digits so it's not modified by the
+ * server. The same format is used for both text and binary messages.
+ * <p>
+ * In the echo and broadcast modes the id is unique within a run, i.e. a broadcast message can be identified by its id:
+ * each sender writes the ids from {@code senderIndex * number.of.messages} upwards. The churn and startup modes do not
+ * identify the messages and always write {@code 0}.
+ */
+public final class MessageTag {
+
+    static final char SEPARATOR = ':';
+
+    // System.nanoTime() may be negative
+    static final long INVALID = Long.MIN_VALUE;
+
+    private MessageTag() {
+    }
+
+    // The max length of the tag, i.e. two longs, an int and the separators
+    static final int MAX_TAG_LENGTH = 2 * 20 + 11 + 3;
+
+    // The tag is written into a per-thread scratch buffer that is reused for every send; the message itself is still
+    // allocated, i.e. the String of a text frame (which Vert.x then encodes to UTF-8) or the Buffer of a binary frame,
+    // and it cannot be reused because the write completes asynchronously
+    private static final ThreadLocal<StringBuilder> TEXT = ThreadLocal.withInitial(StringBuilder::new);
+    private static final ThreadLocal<byte[]> BINARY = ThreadLocal.withInitial(() -> new byte[MAX_TAG_LENGTH]);
+
+    static String tag(long timestamp, long id, Payload payload) {
+        StringBuilder builder = TEXT.get();
+        builder.setLength(0);
+        return builder.append(timestamp).append(SEPARATOR).append(payload.index).append(SEPARATOR).append(id)
+                .append(SEPARATOR).append(payload.text).toString();
+    }
+
+    static Buffer binaryTag(long timestamp, long id, Payload payload) {
+        byte[] tag = BINARY.get();
+        int length = append(tag, 0, timestamp);
+        length = append(tag, length, payload.index);
+        length = append(tag, length, id);
+        return Buffer.buffer(length + payload.size()).appendBytes(tag, 0, length).appendBuffer(payload.binary);
+    }
+
+    /**
+     * Writes the decimal digits of the value followed by the separator.
+     *
+     * @return the position after the separator
+     */
+    private static int append(byte[] tag, int pos, long value) {
+        // Digits are computed in the negative range so that Long.MIN_VALUE does not overflow
+        long v = value < 0 ? value : -value;
+        if (value < 0) {
+            tag[pos++] = '-';
+        }
+        int start = pos;
+        do {
+            tag[pos++] = (byte) ('0' - v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte b = tag[i];
+            tag[i] = tag[j];
+            tag[j] = b;
+        }
+        tag[pos++] = SEPARATOR;
+        return pos;
+    }
+
+    /**
+     * @param message
+     * @return the timestamp or {@link #INVALID} if the message is not tagged
+     */
+    static long timestamp(String message) {
+        int idx = message.indexOf(SEPARATOR);
+        if (idx <= 0) {
+            return INVALID;
+        }
+        try {
+            return Long.parseLong(message, 0, idx, 10);
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * @param message
+     * @return the payload index or {@code -1} if the message is not tagged
+     */
+    static int payload(String message) {
+        int start = message.indexOf(SEPARATOR) + 1;
+        int end = message.indexOf(SEPARATOR, start);
+        if (start <= 0 || end <= start) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(message, start, end, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param message
+     * @return the message id or {@code -1} if the message is not tagged
+     */
+    static long id(String message) {
+        int start = message.indexOf(SEPARATOR, message.indexOf(SEPARATOR) + 1) + 1;
+        int end = message.indexOf(SEPARATOR, start);
+        if (start <= 0 || end <= start) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(message, start, end, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param message
+     * @return the index where the payload starts
+     */
+    static int payloadStart(String message) {
+        return message.indexOf(SEPARATOR, message.indexOf(SEPARATOR, message.indexOf(SEPARATOR) + 1) + 1) + 1;
+    }
+
+    /**
+     * @param message
+     * @return the timestamp or {@link #INVALID} if the message is not tagged
+     */
+    static long timestamp(Buffer message) {
+        return parse(message, 0);
+    }
+
+    /**
+     * @param message
+     * @return the payload index or {@code -1} if the message is not tagged
+     */
+    static int payload(Buffer message) {
+        int start = indexOf(message, 0) + 1;
+        if (start <= 0) {
+            return -1;
+        }
+        long value = parse(message, start);
+        return value < 0 || value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    /**
+     * @param message
+     * @return the message id or {@code -1} if the message is not tagged
+     */
+    static long id(Buffer message) {
+        int start = indexOf(message, indexOf(message, 0) + 1) + 1;
+        if (start <= 0) {
+            return -1;
+        }
+        long value = parse(message, start);
+        return value < 0 ? -1 : value;
+    }
+
+    /**
+     * @param message
+     * @return the index where the payload starts
+     */
+    static int payloadStart(Buffer message) {
+        return indexOf(message, indexOf(message, indexOf(message, 0) + 1) + 1) + 1;
+    }
+
+    private static long parse(Buffer message, int start) {
+        boolean negative = start < message.length() && message.getByte(start) == '-';
+        int digitsStart = negative ? start + 1 : start;
+        long value = 0;
+        for (int i = digitsStart; i < message.length(); i++) {
+            byte b = message.getByte(i);
+            if (b == SEPARATOR) {
+                return i > digitsStart ? (negative ? -value : value) : INVALID;
+            }
+            if (b < '0' || b > '9') {
+                return INVALID;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return INVALID;
+    }
+
+    private static int indexOf(Buffer message, int start) {
+        for (int i = start; i < message.length(); i++) {
+            if (message.getByte(i) == SEPARATOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,582 @@
+package com.github.mkouba.wsperf;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Runs the whole benchmark sweep: for each Quarkus version and server, the server is built, started and warmed up, then
+ * each variant is benchmarked and finally the server is stopped.
+ * <p>
+ * The lifecycle is driven by the control endpoints of the server, i.e. {@code GET /wsperf/ready} is polled until the
+ * server is started and {@code POST /wsperf/shutdown} stops the server as soon as the last run is finished. The warm-up
+ * is repeated until the JIT compilation time of a round drops below {@code orchestrator.warmup.compilation-threshold}
+ * and it's skipped if {@code steady-state.trim=true}.
+ * <p>
+ * Each warm-up and benchmark run is a separate client process launched with the JVM arguments of this process, except
+ * for the arguments set by the orchestrator. The additional benchmarks from {@code orchestrator.plan} are run
+ * {@code orchestrator.runs} times after the variants; a line contains the server and the client arguments separated by
+ * whitespace, e.g. {@code next -Dmode=churn -Dserver.path=/to-lower-case}. The {@code ${port}} and
+ * {@code ${tls-port}} placeholders are replaced with the ports of the server. The arguments prefixed with
+ * {@code server:} are passed to the server JVM instead, e.g. {@code server:-Dserver.compression=true}, and the
+ * arguments prefixed with {@code build:} are passed to the Maven build of the server, e.g. {@code build:-Droutes=500}.
+ * The lines with the same server and build arguments are run against a separate server instance that is started,
+ * warmed up and stopped like the main one. An instance with build arguments rebuilds the server module first, i.e.
+ * these instances run last.
+ * <p>
+ * The {@code next-native} server is the native executable of the {@code next} server module; its startup is always
+ * measured.
+ * <p>
+ * The virtual thread variants are skipped if the server does not run on Java 21+.
+ * <p>
+ * If {@code orchestrator.startup=true} then the startup of each server is measured after the benchmarks.
+ * <p>
+ * The duration of each phase is stored in {@code target/orchestrator}.
+ */
+public class Orchestrator {
+
+    // JVM arguments that are set per client run
+    static final List<String> RUN_ARGS = List.of("-Dmode=", "-Dorchestrator.", "-Dserver.type=", "-Dserver.port=",
+            "-Dserver.path=", "-Dnumber.of.clients=", "-Dworkers=", "-Dvariant=", "-Dresults.dir=", "-Dtls=",
+            "-Dserver.jfr=", "-Dserver.quarkus-version=", "-agentlib:jdwp");
+
+    static final Map<String, ServerModule> MODULES = Map.of(
+            "next", new ServerModule("next", "websocket-server-next", 8080, 8443, null, false),
+            "legacy", new ServerModule("legacy", "websocket-server-legacy", 8888, 8889, List.of("to-lower-case"),
+                    false),
+            "next-native", new ServerModule("next-native", "websocket-server-next", 8080, 8443, null, true));
+
+    static final String COMMON_MODULE = "websocket-server-common";
+
+    // The version of the server modules, i.e. the name of the native executable
+    static final String MODULE_VERSION = "1.0.0-SNAPSHOT";
+
+    static final String READY_PATH = "/wsperf/ready";
+    static final String WARMUP_PATH = "/wsperf/warmup";
+    static final String SHUTDOWN_PATH = "/wsperf/shutdown";
+
+    static final long POLL_INTERVAL = 50;
+
+    static final String SERVER_ARG = "server:";
+    static final String BUILD_ARG = "build:";
+
+    // The variants that run on virtual threads, e.g. "serial-virtual-thread"
+    static final String VIRTUAL_THREAD = "virtual-thread";
+    static final int VIRTUAL_THREADS_JAVA_VERSION = 21;
+
+    private final TestClient client;
+
+    private final File logsDir = new File("target/orchestrator");
+
+    private final JsonArray timeline = new JsonArray();
+
+    private int failures;
+
+    Orchestrator(TestClient client) {
+        this.client = client;
+    }
+
+    int run() throws Exception {
+        long start = System.nanoTime();
+        Files.createDirectories(logsDir.toPath());
+        List<PlanLine> plan = plan();
+        Log.infof("Orchestrator started [versions: %s, servers: %s, variants: %s, runs: %s, tls: %s, plan: %s]",
+                client.orchestratorQuarkusVersions, client.orchestratorServers, client.orchestratorVariants,
+                client.orchestratorRuns, client.orchestratorTls, plan.size());
+
+        for (String version : client.orchestratorQuarkusVersions) {
+            for (String server : client.orchestratorServers) {
+                ServerModule module = MODULES.get(server);
+                if (module == null) {
+                    throw new IllegalStateException("Unsupported server: " + server);
+                }
+                JsonObject phases = new JsonObject().put("version", version).put("server", server);
+                timeline.add(phases);
+                long phaseStart = System.nanoTime();
+                if (client.orchestratorBuild && !build(module, version, List.of())) {
+                    fail("Build of %s with Quarkus %s failed", server, version);
+                    continue;
+                }
+                phases.put("build", millisSince(phaseStart));
+                Map<List<String>, List<PlanLine>> instances = instances(plan, server);
+                benchmark(module, version, List.of(), instances.getOrDefault(List.of(), List.of()), true, phases,
+                        version + "-" + server);
+                if (client.orchestratorStartup || module.nativeImage) {
+                    phaseStart = System.nanoTime();
+                    startup(module, version);
+                    phases.put("startup", millisSince(phaseStart));
+                }
+                JsonArray instancePhases = new JsonArray();
+                for (Map.Entry<List<String>, List<PlanLine>> e : instances.entrySet()) {
+                    if (e.getKey().isEmpty()) {
+                        continue;
+                    }
+                    PlanLine first = e.getValue().get(0);
+                    JsonObject instance = new JsonObject().put("serverArgs", String.join(" ", first.serverArgs));
+                    instancePhases.add(instance);
+                    if (!first.buildArgs.isEmpty()) {
+                        instance.put("buildArgs", String.join(" ", first.buildArgs));
+                        phaseStart = System.nanoTime();
+                        if (!build(module, version, first.buildArgs)) {
+                            fail("Build of %s with Quarkus %s and %s failed", server, version, first.buildArgs);
+                            continue;
+                        }
+                        instance.put("build", millisSince(phaseStart));
+                    }
+                    benchmark(module, version, first.serverArgs, e.getValue(), false, instance,
+                            version + "-" + server + "-" + instancePhases.size());
+                }
+                if (!instancePhases.isEmpty()) {
+                    phases.put("instances", instancePhases);
+                }
+            }
+        }
+
+        Path file = logsDir.toPath().resolve("timeline-" + LocalDateTime.now().toString().replace(':', '-') + ".json");
+        Files.writeString(file, timeline.encodePrettily());
+        long timeTaken = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        if (failures > 0) {
+            Log.warnf("Orchestrator finished in %s s with %s failures - see %s", timeTaken, failures, file);
+            return 1;
+        }
+        Log.infof("Orchestrator finished in %s s - see %s", timeTaken, file);
+        return 0;
+    }
+
+    /**
+     * The variants are only benchmarked by the main server instance. A separate instance is warmed up with the
+     * arguments of the first plan line.
+     */
+    private void benchmark(ServerModule module, String version, List<String> serverArgs, List<PlanLine> lines,
+            boolean main, JsonObject phases, String logName) throws Exception {
+        String server = module.name;
+        long phaseStart = System.nanoTime();
+        File log = new File(logsDir, logName + ".log");
+        Process process = startServer(module, serverArgs, log);
+        ServerHttpClient control = new ServerHttpClient(client.vertx,
+                new HttpClientOptions().setDefaultHost(client.serverHost).setDefaultPort(module.port),
+                client.timeout);
+        try {
+            JsonObject status = awaitReady(process, control);
+            if (status == null) {
+                fail("Server %s with Quarkus %s not ready in %s s - see %s", server, version, client.timeout, log);
+                return;
+            }
+            phases.put("ready", millisSince(phaseStart));
+            Log.infof("Server %s ready in %s ms [quarkus: %s, pid: %s]", server, phases.getLong("ready"),
+                    status.getString("quarkusVersion"), process.pid());
+
+            if (main) {
+                phases.put("variants", variants(module, version, status, process, control));
+            } else if (!lines.isEmpty() && !client.steadyStateTrim) {
+                phaseStart = System.nanoTime();
+                List<String> args = clientArgs(module, version, lines.get(0));
+                phases.put("warmupRounds", warmUp(args, String.join(" ", lines.get(0).instanceArgs()), control));
+                phases.put("warmup", millisSince(phaseStart));
+            }
+
+            phaseStart = System.nanoTime();
+            for (PlanLine line : lines) {
+                List<String> args = clientArgs(module, version, line);
+                for (int run = 1; run <= client.orchestratorRuns; run++) {
+                    Log.infof("Run %s/%s of %s: %s", run, client.orchestratorRuns, server, String.join(" ", args));
+                    runClient(args);
+                }
+            }
+            phases.put("plan", millisSince(phaseStart));
+        } finally {
+            phaseStart = System.nanoTime();
+            stopServer(process, control);
+            control.close();
+            phases.put("shutdown", millisSince(phaseStart));
+        }
+    }
+
+    private JsonArray variants(ServerModule module, String version, JsonObject status, Process process,
+            ServerHttpClient control) throws Exception {
+        int javaVersion = status.getInteger("javaVersion", Runtime.version().feature());
+        JsonArray variants = new JsonArray();
+        for (String variant : client.orchestratorVariants) {
+            if (module.variants != null && !module.variants.contains(variant)) {
+                continue;
+            }
+            if (variant.contains(VIRTUAL_THREAD) && javaVersion < VIRTUAL_THREADS_JAVA_VERSION) {
+                Log.warnf("Variant %s skipped - virtual threads require Java %s+ [server: Java %s]", variant,
+                        VIRTUAL_THREADS_JAVA_VERSION, javaVersion);
+                variants.add(new JsonObject().put("variant", variant).put("skipped", true));
+                continue;
+            }
+            variants.add(variant(module, version, variant, false, process, control));
+            if (client.orchestratorTls) {
+                variants.add(variant(module, version, variant, true, process, control));
+            }
+        }
+        return variants;
+    }
+
+    private List<String> clientArgs(ServerModule module, String version, PlanLine line) {
+        List<String> args = serverArgs(module, version);
+        args.add("-Dserver.port=" + module.port);
+        args.add("-Dnumber.of.clients=" + client.numberOfClients);
+        args.add("-Dserver.jfr=" + client.serverJfr);
+        for (String arg : line.clientArgs) {
+            args.add(arg.replace("${port}", String.valueOf(module.port))
+                    .replace("${tls-port}", String.valueOf(module.tlsPort)));
+        }
+        return args;
+    }
+
+    private JsonObject variant(ServerModule module, String version, String variant, boolean tls, Process process,
+            ServerHttpClient control) throws Exception {
+        String server = module.name;
+        String name = variant + (tls ? " over TLS" : "");
+        JsonObject phases = new JsonObject().put("variant", variant).put("tls", tls);
+        List<String> args = serverArgs(module, version);
+        args.add("-Dserver.path=/" + variant);
+        if (tls) {
+            args.add("-Dtls=true");
+            args.add("-Dserver.port=" + module.tlsPort);
+        } else {
+            args.add("-Dserver.port=" + module.port);
+        }
+
+        long phaseStart = System.nanoTime();
+        if (!client.steadyStateTrim) {
+            phases.put("warmupRounds", warmUp(args, name, control));
+        }
+        phases.put("warmup", millisSince(phaseStart));
+
+        phaseStart = System.nanoTime();
+        startProfiler(process);
+        List<String> runArgs = new ArrayList<>(args);
+        runArgs.add("-Dnumber.of.clients=" + client.numberOfClients);
+        runArgs.add("-Dworkers=" + client.workers);
+        runArgs.add("-Dserver.jfr=" + client.serverJfr);
+        for (int run = 1; run <= client.orchestratorRuns; run++) {
+            Log.infof("Run %s/%s of %s/%s", run, client.orchestratorRuns, server, name);
+            runClient(runArgs);
+        }
+        stopProfiler(process, "flame_" + version + "_" + server + "_" + variant + (tls ? "_tls" : "") + ".html");
+        phases.put("benchmark", millisSince(phaseStart));
+        return phases;
+    }
+
+    /**
+     * The client arguments that identify the server. The Quarkus version is not available at runtime in a native
+     * executable, i.e. it's set explicitly.
+     */
+    private static List<String> serverArgs(ServerModule module, String version) {
+        List<String> args = new ArrayList<>();
+        args.add("-Dserver.type=" + module.name);
+        if (module.nativeImage) {
+            args.add("-Dserver.quarkus-version=" + version);
+        }
+        return args;
+    }
+
+    /**
+     * Measure the startup of the server that was just benchmarked, see {@link Startup}.
+     */
+    private void startup(ServerModule module, String version) throws Exception {
+        List<String> args = serverArgs(module, version);
+        args.add("-Dmode=startup");
+        args.add("-Dstartup.command=" + String.join(" ", module.command(client.orchestratorModulesDir, List.of())));
+        args.add("-Dserver.port=" + module.port);
+        for (int run = 1; run <= client.orchestratorRuns; run++) {
+            Log.infof("Startup run %s/%s of %s", run, client.orchestratorRuns, module.name);
+            runClient(args);
+        }
+    }
+
+    /**
+     * @return the number of warm-up rounds
+     */
+    private int warmUp(List<String> args, String name, ServerHttpClient control) throws Exception {
+        List<String> warmupArgs = new ArrayList<>(args);
+        warmupArgs.add("-Dnumber.of.clients=" + client.orchestratorWarmupClients);
+        warmupArgs.add("-Dserver.jfr=false");
+        warmupArgs.add("-Dresults.dir=target/warmup-results");
+        long threshold = client.orchestratorWarmupCompilationThreshold.toMillis();
+        long before = compilationTime(control);
+        int round = 1;
+        for (; round <= client.orchestratorWarmupMaxRounds; round++) {
+            runClient(warmupArgs);
+            long after = compilationTime(control);
+            long compilation = after - before;
+            Log.infof("Warm-up round %s of %s [compilation time: %s ms]", round, name, compilation);
+            if (before < 0 || after < 0 || compilation < threshold) {
+                break;
+            }
+            before = after;
+        }
+        control.post(WARMUP_PATH);
+        return Math.min(round, client.orchestratorWarmupMaxRounds);
+    }
+
+    private long compilationTime(ServerHttpClient control) {
+        JsonObject status = control.get(READY_PATH);
+        return status != null ? status.getLong("compilationTime", -1L) : -1;
+    }
+
+    /**
+     * The shared server module is installed with the same Quarkus version first.
+     *
+     * @param buildArgs the additional arguments of the plan line
+     */
+    private boolean build(ServerModule module, String version, List<String> buildArgs) throws Exception {
+        Log.infof("Building %s with Quarkus %s %s", module.name, version, buildArgs);
+        List<String> command = new ArrayList<>(List.of("mvn", "clean", "install",
+                "-Dquarkus.platform.version=" + version));
+        if (!mvn(new File(client.orchestratorModulesDir, COMMON_MODULE), command)) {
+            return false;
+        }
+        command = new ArrayList<>(List.of("mvn", "clean", "package", "-Dquarkus.platform.version=" + version));
+        if (client.orchestratorTls) {
+            command.add("-Dtls");
+        }
+        if (module.nativeImage) {
+            command.add("-Dnative");
+            command.add("-DskipTests");
+        }
+        command.addAll(buildArgs);
+        return mvn(module.dir(client.orchestratorModulesDir), command);
+    }
+
+    private static boolean mvn(File dir, List<String> command) throws Exception {
+        return new ProcessBuilder(command).directory(dir).inheritIO().start().waitFor() == 0;
+    }
+
+    private Process startServer(ServerModule module, List<String> serverArgs, File log) throws IOException {
+        List<String> args = new ArrayList<>();
+        if (client.orchestratorTls) {
+            args.add("-Dquarkus.profile=tls");
+            args.add("-Dserver.tls.provider=" + client.tlsProvider);
+        }
+        if (client.orchestratorServerArgs.isPresent()) {
+            args.addAll(List.of(client.orchestratorServerArgs.get().trim().split("\\s+")));
+        }
+        args.addAll(serverArgs);
+        List<String> command = module.command(client.orchestratorModulesDir, args);
+        Log.debugf("Starting server: %s", command);
+        return new ProcessBuilder(command)
+                .directory(module.dir(client.orchestratorModulesDir))
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+    }
+
+    /**
+     * @return the status of the server or {@code null} if the server is not ready in time or the process exited
+     */
+    private JsonObject awaitReady(Process process, ServerHttpClient control) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(client.timeout);
+        while (System.nanoTime() < deadline && process.isAlive()) {
+            JsonObject status = control.poll(READY_PATH);
+            if (status != null) {
+                return status;
+            }
+            TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL);
+        }
+        return null;
+    }
+
+    private void stopServer(Process process, ServerHttpClient control) throws InterruptedException {
+        if (process.isAlive()) {
+            control.post(SHUTDOWN_PATH);
+            if (!process.waitFor(client.timeout, TimeUnit.SECONDS)) {
+                Log.warnf("Server not stopped in %s s - destroying the process", client.timeout);
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private void runClient(List<String> args) throws Exception {
+        int exitCode = launchClient(args, RUN_ARGS);
+        if (exitCode != 0) {
+            fail("Client run failed [exit code: %s, args: %s]", exitCode, args);
+        }
+    }
+
+    /**
+     * Launches a client process with the JVM arguments of this process, except for the excluded ones, and waits until
+     * it's finished.
+     *
+     * @param args the arguments of the run
+     * @param excluded the prefixes of the JVM arguments that are not inherited
+     * @return the exit code
+     */
+    static int launchClient(List<String> args, List<String> excluded) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (excluded.stream().noneMatch(arg::startsWith)) {
+                command.add(arg);
+            }
+        }
+        command.addAll(args);
+        command.add("-jar");
+        command.add(System.getProperty("java.class.path"));
+        Log.debugf("Launching client: %s", command);
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    private void startProfiler(Process process) throws Exception {
+        if (client.orchestratorAsyncProfiler.isPresent()) {
+            asprof("start", String.valueOf(process.pid()));
+            Log.infof("Async profiler started for server PID: %s", process.pid());
+        }
+    }
+
+    private void stopProfiler(Process process, String fileName) throws Exception {
+        if (client.orchestratorAsyncProfiler.isPresent()) {
+            File file = new File(client.orchestratorModulesDir, fileName);
+            asprof("stop", "-f", file.getPath(), "-o", "flamegraph", String.valueOf(process.pid()));
+            Log.infof("Async profiler stopped for server PID: %s, output file: %s", process.pid(), file);
+        }
+    }
+
+    private void asprof(String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(client.orchestratorAsyncProfiler.get(), "bin", "asprof").toString());
+        command.addAll(List.of(args));
+        if (new ProcessBuilder(command).inheritIO().start().waitFor() != 0) {
+            fail("Async profiler failed: %s", command);
+        }
+    }
+
+    /**
+     * @return the lines of {@code orchestrator.plan}
+     */
+    private List<PlanLine> plan() throws IOException {
+        List<PlanLine> plan = new ArrayList<>();
+        if (client.orchestratorPlan.isPresent()) {
+            for (String line : Files.readAllLines(Path.of(client.orchestratorPlan.get()))) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    plan.add(new PlanLine(line.split("\\s+")));
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return the plan lines of the given server grouped by the server and build arguments, in the order of the plan
+     *         except that the instances with build arguments are last
+     */
+    static Map<List<String>, List<PlanLine>> instances(List<PlanLine> plan, String server) {
+        Map<List<String>, List<PlanLine>> instances = new LinkedHashMap<>();
+        Map<List<String>, List<PlanLine>> rebuilt = new LinkedHashMap<>();
+        for (PlanLine line : plan) {
+            if (line.server.equals("*") || line.server.equals(server)) {
+                (line.buildArgs.isEmpty() ? instances : rebuilt)
+                        .computeIfAbsent(line.instanceArgs(), k -> new ArrayList<>()).add(line);
+            }
+        }
+        instances.putAll(rebuilt);
+        return instances;
+    }
+
+    private void fail(String format, Object... params) {
+        failures++;
+        Log.warnf(format, params);
+    }
+
+    static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    static class PlanLine {
+
+        // "*" means all servers
+        final String server;
+        final List<String> serverArgs = new ArrayList<>();
+        final List<String> buildArgs = new ArrayList<>();
+        final List<String> clientArgs = new ArrayList<>();
+
+        PlanLine(String[] tokens) {
+            this.server = tokens[0];
+            for (int i = 1; i < tokens.length; i++) {
+                if (tokens[i].startsWith(SERVER_ARG)) {
+                    serverArgs.add(tokens[i].substring(SERVER_ARG.length()));
+                } else if (tokens[i].startsWith(BUILD_ARG)) {
+                    buildArgs.add(tokens[i].substring(BUILD_ARG.length()));
+                } else {
+                    clientArgs.add(tokens[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the prefixed arguments that identify the server instance, i.e. an empty list for the main instance
+         */
+        List<String> instanceArgs() {
+            List<String> args = new ArrayList<>();
+            buildArgs.forEach(a -> args.add(BUILD_ARG + a));
+            serverArgs.forEach(a -> args.add(SERVER_ARG + a));
+            return args;
+        }
+
+    }
+
+    static class ServerModule {
+
+        final String name;
+        // The Maven module, e.g. "websocket-server-next"
+        final String module;
+        final int port;
+        final int tlsPort;
+        // null means all variants
+        final List<String> variants;
+        // The module is built as a native executable
+        final boolean nativeImage;
+
+        ServerModule(String name, String module, int port, int tlsPort, List<String> variants, boolean nativeImage) {
+            this.name = name;
+            this.module = module;
+            this.port = port;
+            this.tlsPort = tlsPort;
+            this.variants = variants;
+            this.nativeImage = nativeImage;
+        }
+
+        File dir(String modulesDir) {
+            return new File(modulesDir, module);
+        }
+
+        /**
+         * @param modulesDir
+         * @param args the system properties of the server
+         * @return the command that starts the server
+         */
+        List<String> command(String modulesDir, List<String> args) {
+            List<String> command = new ArrayList<>();
+            File target = new File(dir(modulesDir), "target");
+            if (nativeImage) {
+                command.add(new File(target, module + "-" + MODULE_VERSION + "-runner").getAbsolutePath());
+                command.addAll(args);
+            } else {
+                command.add(ProcessHandle.current().info().command().orElse("java"));
+                command.addAll(args);
+                command.add("-jar");
+                command.add(new File(target, "quarkus-app/quarkus-run.jar").getAbsolutePath());
+            }
+            return command;
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.github.mkouba.wsperf;
+
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A pre-generated payload. The expected reply from the server is precomputed so that the validation does not allocate.
+ */
+public final class Payload {
+
+    final int index;
+
+    final String text;
+
+    final Buffer binary;
+
+    final String expectedText;
+
+    final byte[] expectedBinary;
+
+    Payload(int index, String text) {
+        this.index = index;
+        this.text = text;
+        this.binary = Buffer.buffer(text.getBytes(StandardCharsets.UTF_8));
+        this.expectedText = text.toLowerCase();
+        this.expectedBinary = expectedText.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the size of the payload in bytes
+     */
+    int size() {
+        return binary.length();
+    }
+
+    boolean matches(String reply, int start) {
+        return reply.length() - start == expectedText.length()
+                && reply.regionMatches(start, expectedText, 0, expectedText.length());
+    }
+
+    boolean matches(Buffer reply, int start) {
+        if (reply.length() - start != expectedBinary.length) {
+            return false;
+        }
+        for (int i = 0; i < expectedBinary.length; i++) {
+            if (reply.getByte(start + i) != expectedBinary[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.github.mkouba.wsperf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.mkouba.wsperf.payload.PayloadGenerator;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Charset;
+import com.github.mkouba.wsperf.payload.PayloadGenerator.Content;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Payloads are pre-generated so that the client does not need to generate the content per send. See
+ * {@link PayloadGenerator} for the supported size specs and content.
+ */
+public final class Payloads {
+
+    enum Frame {
+        TEXT,
+        BINARY
+    }
+
+    final Optional<String> sizeSpec;
+
+    final Charset charset;
+
+    final Frame frame;
+
+    final Content content;
+
+    private final List<Payload> payloads;
+
+    private Payloads(Optional<String> sizeSpec, Charset charset, Frame frame, Content content,
+            List<Payload> payloads) {
+        this.sizeSpec = sizeSpec;
+        this.charset = charset;
+        this.frame = frame;
+        this.content = content;
+        this.payloads = payloads;
+    }
+
+    static Payloads generate(Optional<String> sizeSpec, String charset, String frame, String content, int count,
+            long seed) {
+        Charset c = Charset.valueOf(charset.toUpperCase());
+        Frame f = Frame.valueOf(frame.toUpperCase());
+        Content ct = Content.valueOf(content.toUpperCase());
+        List<Payload> payloads = new ArrayList<>();
+        for (String text : PayloadGenerator.generate(sizeSpec, c, ct, count, seed)) {
+            payloads.add(new Payload(payloads.size(), text));
+        }
+        return new Payloads(sizeSpec, c, f, ct, payloads);
+    }
+
+    /**
+     * @return a random pre-generated payload
+     */
+    Payload next() {
+        return payloads.size() == 1 ? payloads.get(0)
+                : payloads.get(ThreadLocalRandom.current().nextInt(payloads.size()));
+    }
+
+    /**
+     * @param index
+     * @return the payload with the given index or {@code null}
+     */
+    Payload get(int index) {
+        return index >= 0 && index < payloads.size() ? payloads.get(index) : null;
+    }
+
+    boolean isBinary() {
+        return frame == Frame.BINARY;
+    }
+
+    int maxSize() {
+        return payloads.stream().mapToInt(Payload::size).max().orElse(0);
+    }
+
+    JsonObject toJson() {
+        return new JsonObject()
+                .put("size", sizeSpec.orElse(PayloadGenerator.DEFAULT_PAYLOAD))
+                .put("charset", charset.toString().toLowerCase())
+                .put("frame", frame.toString().toLowerCase())
+                .put("content", content.toString().toLowerCase())
+                .put("count", payloads.size())
+                .put("avgSize", payloads.stream().mapToInt(Payload::size).average().orElse(0))
+                .put("maxSize", maxSize());
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.github.mkouba.wsperf;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Saturation search - the max throughput that meets the SLO is searched for each number of connections from
+ * {@code saturation.clients}. A probe is an {@code echo} run at a constant offered rate for
+ * {@code saturation.probe-duration}; the probe passes if the p99 latency does not exceed {@code saturation.slo.p99},
+ * there are at most {@code saturation.slo.errors} errors and at least {@code saturation.slo.sustained} of the offered
+ * rate is achieved.
+ * <p>
+ * The offered rate starts at {@code saturation.start-rate} and it's multiplied by {@code saturation.factor} until a
+ * probe fails. Then the rate is binary searched between the last passed and the first failed probe until the gap is
+ * below {@code saturation.precision}. The knee is the passed probe with the highest throughput and the curve contains
+ * all probes ordered by the offered rate.
+ * <p>
+ * Each probe is a separate client process launched with the JVM arguments of this process, e.g. {@code server.path}
+ * or {@code workers}, except for the arguments set per probe. The results of the probes are stored in
+ * {@code target/saturation}.
+ */
+public class Saturation {
+
+    // JVM arguments that are set per probe
+    static final List<String> PROBE_ARGS = List.of("-Dmode=", "-Dsaturation.", "-Dnumber.of.clients=",
+            "-Dnumber.of.messages=", "-Dtarget.rate=", "-Dmax-in-flight=", "-Dvariant=", "-Dresults.dir=",
+            "-agentlib:jdwp");
+
+    private final TestClient client;
+
+    private final File probesDir = new File("target/saturation/" + System.currentTimeMillis());
+
+    private int probes;
+
+    // The result of the first successful probe
+    private JsonObject reference;
+
+    Saturation(TestClient client) {
+        this.client = client;
+    }
+
+    int run() throws Exception {
+        long start = System.nanoTime();
+        String path = client.serverPath.startsWith("/") ? client.serverPath.substring(1) : client.serverPath;
+        String variantName = client.variant.orElse("saturation-" + path + client.variantSuffix());
+        List<Integer> clients = client.saturationClients.orElse(List.of(client.numberOfClients));
+        double sloP99 = LatencyStats.toMicros(client.saturationSloP99.toNanos());
+        Log.infof(
+                "Saturation started [saturation.clients: %s, saturation.slo.p99: %s, saturation.slo.errors: %s, saturation.slo.sustained: %s, saturation.start-rate: %s, saturation.probe-duration: %s, server.path: %s]",
+                clients, client.saturationSloP99, client.saturationSloErrors, client.saturationSloSustained,
+                client.saturationStartRate, client.saturationProbeDuration, client.serverPath);
+
+        JsonArray curves = new JsonArray();
+        JsonObject knee = null;
+        for (int numberOfClients : clients) {
+            List<JsonObject> points = new ArrayList<>();
+            JsonObject passed = null;
+            int failedRate = -1;
+            int rate = client.saturationStartRate;
+            // Increase the rate until the SLO is broken
+            while (points.size() < client.saturationMaxProbes) {
+                JsonObject point = probe(variantName, numberOfClients, rate, sloP99);
+                points.add(point);
+                if (!point.getBoolean("passed")) {
+                    failedRate = rate;
+                    break;
+                }
+                passed = point;
+                rate = (int) Math.ceil(rate * client.saturationFactor);
+            }
+            // Binary search between the last passed and the first failed rate
+            while (failedRate > 0 && points.size() < client.saturationMaxProbes) {
+                int passedRate = passed != null ? passed.getInteger("rate") : 0;
+                if (failedRate - passedRate <= Math.max(1, passedRate * client.saturationPrecision)) {
+                    break;
+                }
+                rate = passedRate + (failedRate - passedRate) / 2;
+                JsonObject point = probe(variantName, numberOfClients, rate, sloP99);
+                points.add(point);
+                if (point.getBoolean("passed")) {
+                    passed = point;
+                } else {
+                    failedRate = rate;
+                }
+            }
+            JsonObject curveKnee = points.stream().filter(p -> p.getBoolean("passed"))
+                    .max(Comparator.comparingDouble(p -> p.getDouble("throughput"))).orElse(null);
+            if (curveKnee != null) {
+                Log.infof("Max throughput at SLO with %s clients: %.0f msg/s [offered: %s msg/s, p99: %.1f us]",
+                        numberOfClients, curveKnee.getDouble("throughput"), curveKnee.getInteger("rate"),
+                        curveKnee.getDouble("p99"));
+                if (knee == null || curveKnee.getDouble("throughput") > knee.getDouble("throughput")) {
+                    knee = curveKnee;
+                }
+            } else {
+                Log.warnf("SLO not met with %s clients", numberOfClients);
+            }
+            points.sort(Comparator.comparingInt(p -> p.getInteger("rate")));
+            curves.add(new JsonObject()
+                    .put("clients", numberOfClients)
+                    .put("knee", curveKnee != null ? curveKnee.getInteger("rate") : null)
+                    .put("points", new JsonArray(new ArrayList<>(points))));
+        }
+        long timeTaken = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (reference == null) {
+            Log.warnf("Saturation failed in %s ms - no probe finished", timeTaken);
+            return 1;
+        }
+        if (knee != null) {
+            Log.infof("Saturation finished in %s ms [max throughput at SLO: %.0f msg/s, clients: %s, p99: %.1f us]",
+                    timeTaken, knee.getDouble("throughput"), knee.getInteger("clients"), knee.getDouble("p99"));
+        } else {
+            Log.warnf("Saturation finished in %s ms - SLO not met", timeTaken);
+        }
+
+        JsonObject res = new JsonObject();
+        res.put("timestamp", LocalDateTime.now().toString());
+        res.put("timeTaken", timeTaken);
+        res.put("quarkusVersion", reference.getString("quarkusVersion"));
+        res.put("server", reference.getString("server"));
+        res.put("variant", variantName);
+        res.put("mode", client.mode);
+        res.put("numberOfClients", knee != null ? knee.getInteger("clients") : 0);
+        res.put("numberOfMessages", knee != null ? knee.getInteger("messages") : 0);
+        // The max throughput at SLO
+        res.put("throughput", knee != null ? knee.getDouble("throughput") : 0.0);
+        res.put("payload", reference.getJsonObject("payload"));
+        if (knee != null) {
+            res.put("latency", knee.getJsonObject("latency"));
+            if (knee.containsKey("cpuPerMessage")) {
+                res.put("cpuPerMessage", knee.getJsonObject("cpuPerMessage"));
+            }
+        }
+        res.put("saturation", new JsonObject()
+                .put("slo", new JsonObject()
+                        .put("p99", sloP99)
+                        .put("errors", client.saturationSloErrors)
+                        .put("sustained", client.saturationSloSustained))
+                .put("probeDuration", client.saturationProbeDuration.toMillis())
+                .put("probes", probes)
+                .put("knee", knee != null ? knee.copy() : null)
+                .put("curves", curves));
+        client.writeResult(res);
+        return 0;
+    }
+
+    private JsonObject probe(String variantName, int numberOfClients, int rate, double sloP99) throws Exception {
+        double seconds = (double) client.saturationProbeDuration.toMillis() / TimeUnit.SECONDS.toMillis(1);
+        int messages = (int) Math.max(1, Math.ceil(rate * seconds / numberOfClients));
+        File dir = new File(probesDir, String.valueOf(++probes));
+        Log.infof("Probe %s: %s clients at %s msg/s", probes, numberOfClients, rate);
+        int exitCode = Orchestrator.launchClient(List.of("-Dmode=echo", "-Dnumber.of.clients=" + numberOfClients,
+                "-Dnumber.of.messages=" + messages, "-Dtarget.rate=" + rate, "-Dvariant=" + variantName,
+                "-Dresults.dir=" + dir.getPath()), PROBE_ARGS);
+
+        JsonObject point = new JsonObject().put("clients", numberOfClients).put("rate", rate).put("messages",
+                messages);
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (exitCode != 0 || files == null || files.length == 0) {
+            Log.infof("Probe %s failed [exit code: %s]", probes, exitCode);
+            return point.put("passed", false).put("reason", "client");
+        }
+        JsonObject result = new JsonObject(Files.readString(files[0].toPath(), StandardCharsets.UTF_8));
+        if (reference == null) {
+            reference = result;
+        }
+        double throughput = result.getDouble("throughput");
+        JsonObject latency = result.getJsonObject("latency");
+        long errors = errors(result);
+        point.put("throughput", throughput);
+        point.put("p50", latency.getDouble("p50"));
+        point.put("p99", latency.getDouble("p99"));
+        point.put("p99.9", latency.getDouble("p99.9"));
+        point.put("errors", errors);
+        if (result.containsKey("cpuPerMessage")) {
+            point.put("cpuPerMessage", result.getJsonObject("cpuPerMessage"));
+        }
+        point.put("latency", latency);
+        String reason = null;
+        if (errors > client.saturationSloErrors) {
+            reason = "errors";
+        } else if (latency.getDouble("p99") > sloP99) {
+            reason = "p99";
+        } else if (throughput < client.saturationSloSustained * rate) {
+            reason = "throughput";
+        }
+        point.put("passed", reason == null);
+        if (reason != null) {
+            point.put("reason", reason);
+        }
+        Log.infof("Probe %s %s [throughput: %.0f msg/s, p99: %.1f us, errors: %s]", probes,
+                reason == null ? "passed" : "failed (" + reason + ")", throughput, latency.getDouble("p99"), errors);
+        return point;
+    }
+
+    /**
+     * @return the number of send failures and invalid replies recorded in the time series
+     */
+    static long errors(JsonObject result) {
+        JsonObject timeSeries = result.getJsonObject("timeSeries");
+        if (timeSeries == null) {
+            return 0;
+        }
+        long errors = 0;
+        for (Object interval : timeSeries.getJsonArray("intervals")) {
+            errors += ((JsonObject) interval).getLong("errors", 0L);
+        }
+        return errors;
+    }
+
+}
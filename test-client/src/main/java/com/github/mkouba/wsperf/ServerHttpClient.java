@@ -0,0 +1,87 @@
+package com.github.mkouba.wsperf;
+
+import java.util.concurrent.TimeUnit;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A simple blocking HTTP client used to call the auxiliary endpoints of the tested server, e.g. the metrics endpoint.
+ * The calls are not part of the measurement. If a call fails then a warning is logged and {@code null} is returned.
+ */
+public final class ServerHttpClient {
+
+    private final HttpClient client;
+
+    private final long timeout;
+
+    ServerHttpClient(Vertx vertx, HttpClientOptions options, long timeout) {
+        this.client = vertx.createHttpClient(options);
+        this.timeout = timeout;
+    }
+
+    JsonObject get(String path) {
+        return json(HttpMethod.GET, path);
+    }
+
+    boolean delete(String path) {
+        return request(HttpMethod.DELETE, path) != null;
+    }
+
+    boolean post(String path) {
+        return request(HttpMethod.POST, path) != null;
+    }
+
+    /**
+     * Unlike {@link #get(String)} no warning is logged if the call fails, e.g. the server is not started yet.
+     *
+     * @return the JSON response body or {@code null} if the call failed
+     */
+    JsonObject poll(String path) {
+        Buffer body = request(HttpMethod.GET, path, false);
+        return body != null && body.length() > 0 ? body.toJsonObject() : null;
+    }
+
+    /**
+     * @return the JSON response body or {@code null} if the call failed or the body is empty
+     */
+    JsonObject json(HttpMethod method, String path) {
+        Buffer body = request(method, path);
+        return body != null && body.length() > 0 ? body.toJsonObject() : null;
+    }
+
+    void close() {
+        client.close();
+    }
+
+    private Buffer request(HttpMethod method, String path) {
+        return request(method, path, true);
+    }
+
+    private Buffer request(HttpMethod method, String path, boolean warn) {
+        try {
+            return client.request(method, path)
+                    .compose(req -> req.send())
+                    .compose(res -> {
+                        if (res.statusCode() >= 300) {
+                            throw new IllegalStateException(method + " " + path + " returned " + res.statusCode());
+                        }
+                        return res.body();
+                    })
+                    .toCompletionStage()
+                    .toCompletableFuture()
+                    .get(timeout, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            if (warn) {
+                Log.warnf("Unable to call %s %s: %s", method, path, e.toString());
+            }
+            return null;
+        }
+    }
+
+}
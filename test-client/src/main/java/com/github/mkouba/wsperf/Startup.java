@@ -0,0 +1,190 @@
+package com.github.mkouba.wsperf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Startup - the server is launched with {@code startup.command} and the client keeps connecting until the first
+ * message is echoed. The times are measured from the moment the process is launched:
+ * <ul>
+ * <li>{@code timeToConnect} - the WebSocket handshake succeeded,</li>
+ * <li>{@code timeToFirstEcho} - the reply to the first message was received.</li>
+ * </ul>
+ * The resident set size of the server process is read from {@code /proc/<pid>/status} right after the first echo,
+ * i.e. the client must run on the same host. Finally, the server is stopped and the time to stop is measured.
+ */
+public class Startup {
+
+    static final long POLL_INTERVAL = 1;
+
+    private final TestClient client;
+
+    Startup(TestClient client) {
+        this.client = client;
+    }
+
+    int run() throws Exception {
+        if (client.startupCommand.isEmpty()) {
+            throw new IllegalStateException("startup.command must be set in the startup mode");
+        }
+        List<String> command = List.of(client.startupCommand.get().trim().split("\\s+"));
+        client.payloads = client.generatePayloads();
+        List<ClientLoop> loops = ClientLoop.deploy(client.vertx, 1, client.clientOptions(1), client.timeout);
+        ClientLoop loop = loops.get(0);
+        File log = new File("target/startup/server.log");
+        Files.createDirectories(log.toPath().getParent());
+        Log.infof("Startup started [startup.command: %s, server.host: %s, server.port: %s, server.path: %s]", command,
+                client.serverHost, client.serverPort, client.serverPath);
+
+        FirstEcho echo = new FirstEcho();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        try {
+            loop.context.runOnContext(v -> connect(loop, echo));
+            try {
+                echo.received.get(client.timeout, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                Log.warnf("No echo received in %s s - see %s", client.timeout, log);
+                return 1;
+            }
+            long timeToFirstEcho = echo.echoed - start;
+            long rss = rss(process.pid());
+            echo.ws.close().toCompletionStage().toCompletableFuture().get(client.timeout, TimeUnit.SECONDS);
+
+            long stopStart = System.nanoTime();
+            process.destroy();
+            if (!process.waitFor(client.timeout, TimeUnit.SECONDS)) {
+                Log.warnf("Server not stopped in %s s", client.timeout);
+                return 1;
+            }
+            long timeToStop = System.nanoTime() - stopStart;
+
+            long timeTaken = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Log.infof("Finished in %s ms [connect: %.1f ms, first echo: %.1f ms, rss: %.1f MB, stop: %.1f ms]",
+                    timeTaken, toMillis(echo.connected - start), toMillis(timeToFirstEcho),
+                    rss / (1024.0 * 1024.0), toMillis(timeToStop));
+
+            JsonObject startup = new JsonObject();
+            startup.put("command", String.join(" ", command));
+            startup.put("unit", "ms");
+            startup.put("timeToConnect", toMillis(echo.connected - start));
+            startup.put("timeToFirstEcho", toMillis(timeToFirstEcho));
+            startup.put("connectAttempts", echo.attempts);
+            startup.put("rssAfterFirstEcho", rss);
+            startup.put("timeToStop", toMillis(timeToStop));
+
+            JsonObject res = new JsonObject();
+            res.put("timestamp", LocalDateTime.now().toString());
+            res.put("timeTaken", timeTaken);
+            res.put("quarkusVersion", client.quarkusVersion(echo.version));
+            res.put("server", client.serverType(null));
+            res.put("variant", client.variant.orElse("startup"));
+            res.put("mode", client.mode);
+            res.put("numberOfClients", 1);
+            res.put("numberOfMessages", 1);
+            res.put("startup", startup);
+            client.writeResult(res);
+            return 0;
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Connect the client; if the connection fails then try again after {@link #POLL_INTERVAL}.
+     */
+    private void connect(ClientLoop loop, FirstEcho echo) {
+        echo.attempts++;
+        loop.client.connect(client.connectOptions()).onComplete(r -> {
+            if (r.failed()) {
+                client.vertx.setTimer(POLL_INTERVAL, id -> connect(loop, echo));
+                return;
+            }
+            echo.connected = System.nanoTime();
+            WebSocket ws = r.result();
+            echo.ws = ws;
+            ws.textMessageHandler(s -> {
+                if (s.startsWith("_")) {
+                    echo.version = s.substring(1);
+                } else {
+                    echoed(echo, client.validate(s));
+                }
+            });
+            ws.binaryMessageHandler(b -> echoed(echo, client.validate(b)));
+            Payload payload = client.payloads.next();
+            if (client.payloads.isBinary()) {
+                ws.writeBinaryMessage(MessageTag.binaryTag(System.nanoTime(), 0, payload));
+            } else {
+                ws.writeTextMessage(MessageTag.tag(System.nanoTime(), 0, payload));
+            }
+        });
+    }
+
+    private void echoed(FirstEcho echo, long sent) {
+        if (sent != MessageTag.INVALID) {
+            echo.echoed = System.nanoTime();
+            echo.received.complete(null);
+        } else {
+            echo.received.completeExceptionally(new IllegalStateException("Invalid reply"));
+        }
+    }
+
+    /**
+     * @return the resident set size of the given process in bytes or {@code -1} if not available (Linux only)
+     */
+    static long rss(long pid) {
+        Path status = Path.of("/proc/" + pid + "/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status)) {
+                // VmRSS:	  123456 kB
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.debugf(e, "Unable to read %s", status);
+        }
+        return -1;
+    }
+
+    static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    // Only accessed from the loop context until the future is completed
+    static class FirstEcho {
+
+        final CompletableFuture<Void> received = new CompletableFuture<>();
+
+        int attempts;
+
+        long connected;
+
+        long echoed;
+
+        WebSocket ws;
+
+        String version;
+
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.github.mkouba.wsperf;
+
+import java.util.Arrays;
+
+/**
+ * Basic statistics for repeated runs. The number of runs is usually small, therefore non-parametric tests are used.
+ */
+public final class Statistics {
+
+    // Two-sided 95% quantiles of the Student's t-distribution for 1..30 degrees of freedom
+    static final double[] T_95 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201, 2.179,
+            2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052,
+            2.048, 2.045, 2.042 };
+
+    // The exact distribution of U is only computed for small samples without ties
+    static final int EXACT_MAX_SIZE = 30;
+
+    private Statistics() {
+    }
+
+    static double mean(double[] values) {
+        return Arrays.stream(values).average().orElse(Double.NaN);
+    }
+
+    static double median(double[] values) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 0 ? (sorted[mid - 1] + sorted[mid]) / 2 : sorted[mid];
+    }
+
+    /**
+     * @return the sample standard deviation
+     */
+    static double stddev(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    /**
+     * @return the half-width of the 95% confidence interval of the mean
+     */
+    static double confidenceInterval(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        int df = values.length - 1;
+        double t = df <= T_95.length ? T_95[df - 1] : 1.96;
+        return t * stddev(values) / Math.sqrt(values.length);
+    }
+
+    /**
+     * Two-sided Mann-Whitney U test. The exact distribution is used for small samples without ties, otherwise the
+     * normal approximation with tie correction is used.
+     *
+     * @return the p-value
+     */
+    static double mannWhitney(double[] a, double[] b) {
+        int n1 = a.length;
+        int n2 = b.length;
+        if (n1 == 0 || n2 == 0) {
+            return Double.NaN;
+        }
+        int n = n1 + n2;
+        double[][] all = new double[n][];
+        for (int i = 0; i < n1; i++) {
+            all[i] = new double[] { a[i], 0 };
+        }
+        for (int i = 0; i < n2; i++) {
+            all[n1 + i] = new double[] { b[i], 1 };
+        }
+        Arrays.sort(all, (x, y) -> Double.compare(x[0], y[0]));
+
+        // Assign average ranks to ties
+        double rankSumA = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j + 1 < n && all[j + 1][0] == all[i][0]) {
+                j++;
+            }
+            double rank = (i + j + 2) / 2.0;
+            for (int k = i; k <= j; k++) {
+                if (all[k][1] == 0) {
+                    rankSumA += rank;
+                }
+            }
+            int ties = j - i + 1;
+            tieCorrection += (double) ties * ties * ties - ties;
+            i = j + 1;
+        }
+        double u = rankSumA - n1 * (n1 + 1) / 2.0;
+
+        if (tieCorrection == 0 && n <= EXACT_MAX_SIZE) {
+            return exactPValue(n1, n2, (int) u);
+        }
+        double mean = n1 * n2 / 2.0;
+        double variance = n1 * n2 / 12.0 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+        if (variance == 0) {
+            return 1.0;
+        }
+        // Continuity correction
+        double z = (Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+        return Math.min(1.0, 2 * (1 - normalCdf(Math.max(0, z))));
+    }
+
+    private static double exactPValue(int n1, int n2, int u) {
+        int max = n1 * n2;
+        // counts[j][v] - the number of arrangements of i and j elements with U = v
+        long[][] previous = new long[n2 + 1][max + 1];
+        for (int j = 0; j <= n2; j++) {
+            previous[j][0] = 1;
+        }
+        for (int i = 1; i <= n1; i++) {
+            long[][] current = new long[n2 + 1][max + 1];
+            current[0][0] = 1;
+            for (int j = 1; j <= n2; j++) {
+                for (int v = 0; v <= i * j; v++) {
+                    current[j][v] = current[j - 1][v] + (v >= j ? previous[j][v - j] : 0);
+                }
+            }
+            previous = current;
+        }
+        long[] counts = previous[n2];
+        double total = 0;
+        double lower = 0;
+        double upper = 0;
+        for (int v = 0; v <= max; v++) {
+            total += counts[v];
+            if (v <= u) {
+                lower += counts[v];
+            }
+            if (v >= u) {
+                upper += counts[v];
+            }
+        }
+        return Math.min(1.0, 2 * Math.min(lower, upper) / total);
+    }
+
+    // Abramowitz and Stegun 26.2.17
+    private static double normalCdf(double z) {
+        double t = 1 / (1 + 0.2316419 * Math.abs(z));
+        double d = 0.3989423 * Math.exp(-z * z / 2);
+        double p = d * t * (0.3193815 + t * (-0.3565638 + t * (1.781478 + t * (-1.821256 + t * 1.330274))));
+        return z > 0 ? 1 - p : p;
+    }
+
+}
@@ -7,8 +7,15 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import io.quarkus.runtime.annotations.QuarkusMain;
 import io.vertx.core.json.JsonObject;
@@ -16,15 +23,35 @@ import io.vertx.core.json.JsonObject;
 @QuarkusMain(name = "summary")
 public class SummaryTable {
 
+    /**
+     * The arguments are result files or directories. Options:
+     * <ul>
+     * <li>{@code --baseline=<version>} - the version other versions are compared to; the oldest version by default</li>
+     * <li>{@code --alpha=<value>} - the significance level; {@code 0.05} by default</li>
+     * <li>{@code --threshold=<percent>} - differences of the medians below this threshold are ignored; {@code 0} by
+     * default</li>
+     * </ul>
+     * If a statistically significant regression of the throughput or the p99 latency is detected then the process exits
+     * with code {@code 1}.
+     */
     public static void main(String[] args) {
 
         if (args.length == 0) {
             return;
         }
 
+        Map<String, String> options = new HashMap<>();
         List<File> files = new ArrayList<File>();
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
+            if (arg.startsWith("--")) {
+                int idx = arg.indexOf('=');
+                if (idx == -1) {
+                    throw new IllegalArgumentException("Invalid option: " + arg);
+                }
+                options.put(arg.substring(2, idx), arg.substring(idx + 1));
+                continue;
+            }
             File file = new File(arg);
             if (!file.canRead()) {
                 throw new IllegalArgumentException("Unable to read the data file: " + file);
@@ -44,48 +71,566 @@ public class SummaryTable {
         if (files.isEmpty()) {
             return;
         }
-        Collections.sort(files, new Comparator<File>() {
-            @Override
-            public int compare(File f1, File f2) {
-                String f1Name = f1.getName();
-                String f2Name = f2.getName();
-                if (f1Name.startsWith("999-SNAPSHOT")) {
-                    return 1;
+        double alpha = Double.parseDouble(options.getOrDefault("alpha", "0.05"));
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0"));
+
+        // variant -> server -> version -> runs
+        Map<String, Map<String, Map<String, List<JsonObject>>>> results = new LinkedHashMap<>();
+        for (File file : files) {
+            try {
+                JsonObject json = new JsonObject(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+                results.computeIfAbsent(json.getString("variant", "to-lower-case"),
+                        k -> new TreeMap<>(SummaryTable::compareServers))
+                        .computeIfAbsent(json.getString("server", "next"),
+                                k -> new TreeMap<>(SummaryTable::compareVersions))
+                        .computeIfAbsent(json.getString("quarkusVersion"), k -> new ArrayList<>()).add(json);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read result file: " + file);
+            }
+        }
+
+        boolean regression = false;
+        for (Entry<String, Map<String, Map<String, List<JsonObject>>>> variantEntry : results.entrySet()) {
+            if (isMode(variantEntry.getValue(), "idle")) {
+                printMemory(variantEntry.getKey(), variantEntry.getValue());
+                continue;
+            }
+            if (isMode(variantEntry.getValue(), "startup")) {
+                printStartup(variantEntry.getKey(), variantEntry.getValue());
+                continue;
+            }
+            if (isMode(variantEntry.getValue(), "saturation")) {
+                for (Entry<String, Map<String, List<JsonObject>>> server : variantEntry.getValue().entrySet()) {
+                    regression |= printSaturation(variantEntry.getKey(), server.getKey(), server.getValue(), options,
+                            alpha, threshold);
+                }
+                continue;
+            }
+            for (Entry<String, Map<String, List<JsonObject>>> server : variantEntry.getValue().entrySet()) {
+                regression |= printVersions(variantEntry.getKey(), server.getKey(), server.getValue(), options, alpha,
+                        threshold);
+            }
+            if (variantEntry.getValue().size() > 1) {
+                printServers(variantEntry.getKey(), variantEntry.getValue(), alpha, threshold);
+            }
+        }
+        printRoutes(results);
+        if (regression) {
+            System.out.println();
+            System.out.println("Statistically significant regression detected!");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Print the summary table of a server and variant - one row per version, each version is compared to the baseline.
+     *
+     * @return {@code true} if a regression was detected
+     */
+    static boolean printVersions(String variant, String server, Map<String, List<JsonObject>> versions,
+            Map<String, String> options, double alpha, double threshold) {
+        boolean regression = false;
+        String baseline = options.getOrDefault("baseline", versions.keySet().iterator().next());
+        System.out.printf("%nVariant: %s [server: %s, baseline: %s, alpha: %s]%n", variant, server, baseline,
+                alpha);
+        Runs baselineRuns = versions.containsKey(baseline) ? new Runs(versions.get(baseline)) : null;
+
+        // Print the summary table - one row per version
+        final String sep = "|";
+        StringBuilder header = new StringBuilder();
+        for (String column : COLUMNS) {
+            header.append(padLeft(column, pad(column))).append(sep);
+        }
+        System.out.println(header);
+        for (Entry<String, List<JsonObject>> entry : versions.entrySet()) {
+            Runs runs = new Runs(entry.getValue());
+            JsonObject first = entry.getValue().get(0);
+            List<String> values = new ArrayList<>();
+            values.add(entry.getKey());
+            values.add(String.valueOf(runs.time.length));
+            values.add(first.getString("numberOfClients"));
+            values.add(first.getString("numberOfMessages"));
+            values.add(String.format("%.0fms", Statistics.median(runs.time)));
+            values.add(String.format("%.0f", Statistics.median(runs.throughput)));
+            values.add(String.format("%.0f (%.1f%%)", Statistics.stddev(runs.throughput),
+                    100 * Statistics.stddev(runs.throughput) / Statistics.mean(runs.throughput)));
+            values.add(String.format("+/-%.0f", Statistics.confidenceInterval(runs.throughput)));
+            values.add(latency(runs.p50));
+            values.add(latency(runs.p99));
+            values.add(latency(runs.p999));
+            values.add(runs.allocated.length > 0 ? String.format("%.0f", Statistics.median(runs.allocated)) : "-");
+            values.add(runs.wire.length > 0 ? String.format("%.0f", Statistics.median(runs.wire)) : "-");
+            values.add(runs.serverCpu.length > 0 ? String.format("%.1f", Statistics.median(runs.serverCpu)) : "-");
+            String verdict;
+            if (baselineRuns == null || entry.getKey().equals(baseline)) {
+                values.add("-");
+                values.add("-");
+                verdict = baselineRuns != null ? "baseline" : "-";
+            } else {
+                Comparison throughput = new Comparison(baselineRuns.throughput, runs.throughput, alpha, threshold);
+                Comparison p99 = new Comparison(baselineRuns.p99, runs.p99, alpha, threshold);
+                values.add(throughput.toString());
+                values.add(p99.toString());
+                // Higher throughput is better, lower latency is better
+                if (throughput.significantDecrease() || p99.significantIncrease()) {
+                    verdict = "REGRESSION";
+                    regression = true;
+                } else if (throughput.significantIncrease() || p99.significantDecrease()) {
+                    verdict = "improvement";
+                } else {
+                    verdict = "no change";
+                }
+            }
+            values.add(verdict);
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < COLUMNS.size(); i++) {
+                String column = COLUMNS.get(i);
+                row.append(i == 0 ? padRight(values.get(i), pad(column)) : padLeft(values.get(i), pad(column)))
+                        .append(sep);
+            }
+            System.out.println(row);
+        }
+        return regression;
+    }
+
+    /**
+     * Print the servers side by side - one row per version, the other servers are compared to the first one.
+     */
+    static void printServers(String variant, Map<String, Map<String, List<JsonObject>>> servers, double alpha,
+            double threshold) {
+        List<String> names = new ArrayList<>(servers.keySet());
+        String reference = names.get(0);
+        System.out.printf("%nVariant: %s [%s, alpha: %s]%n", variant, String.join(" vs ", names), alpha);
+        List<String> columns = new ArrayList<>();
+        columns.add("Version");
+        for (String name : names) {
+            columns.add(name + " msgs/s");
+            columns.add(name + " p99 (us)");
+        }
+        for (String name : names.subList(1, names.size())) {
+            columns.add("Msgs/s " + name + " vs " + reference);
+            columns.add("p99 " + name + " vs " + reference);
+        }
+        final String sep = "|";
+        StringBuilder header = new StringBuilder();
+        for (String column : columns) {
+            header.append(padLeft(column, pad(column))).append(sep);
+        }
+        System.out.println(header);
+
+        Set<String> versions = new TreeSet<>(SummaryTable::compareVersions);
+        servers.values().forEach(v -> versions.addAll(v.keySet()));
+        for (String version : versions) {
+            List<String> values = new ArrayList<>();
+            values.add(version);
+            Map<String, Runs> runs = new HashMap<>();
+            for (String name : names) {
+                List<JsonObject> results = servers.get(name).get(version);
+                if (results != null) {
+                    Runs r = new Runs(results);
+                    runs.put(name, r);
+                    values.add(String.format("%.0f", Statistics.median(r.throughput)));
+                    values.add(latency(r.p99));
+                } else {
+                    values.add("-");
+                    values.add("-");
+                }
+            }
+            Runs referenceRuns = runs.get(reference);
+            for (String name : names.subList(1, names.size())) {
+                Runs r = runs.get(name);
+                if (referenceRuns != null && r != null) {
+                    values.add(new Comparison(referenceRuns.throughput, r.throughput, alpha, threshold).toString());
+                    values.add(new Comparison(referenceRuns.p99, r.p99, alpha, threshold).toString());
+                } else {
+                    values.add("-");
+                    values.add("-");
+                }
+            }
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < columns.size(); i++) {
+                String column = columns.get(i);
+                row.append(i == 0 ? padRight(values.get(i), pad(column)) : padLeft(values.get(i), pad(column)))
+                        .append(sep);
+            }
+            System.out.println(row);
+        }
+    }
+
+    static boolean isMode(Map<String, Map<String, List<JsonObject>>> servers, String mode) {
+        return servers.values().stream().flatMap(v -> v.values().stream()).flatMap(List::stream)
+                .anyMatch(r -> mode.equals(r.getString("mode")));
+    }
+
+    /**
+     * Print the max throughput at SLO of the saturation mode - one row per version, each version is compared to the
+     * baseline. The latency at the knee is only informative, i.e. only a lower max throughput is a regression.
+     *
+     * @return {@code true} if a regression was detected
+     */
+    static boolean printSaturation(String variant, String server, Map<String, List<JsonObject>> versions,
+            Map<String, String> options, double alpha, double threshold) {
+        boolean regression = false;
+        String baseline = options.getOrDefault("baseline", versions.keySet().iterator().next());
+        JsonObject slo = versions.values().iterator().next().get(0).getJsonObject("saturation").getJsonObject("slo");
+        System.out.printf("%nVariant: %s [server: %s, max msgs/s at SLO p99 < %.0f us, errors <= %s, baseline: %s]%n",
+                variant, server, slo.getDouble("p99"), slo.getLong("errors"), baseline);
+        Runs baselineRuns = versions.containsKey(baseline) ? new Runs(versions.get(baseline)) : null;
+        final String sep = "|";
+        StringBuilder header = new StringBuilder();
+        for (String column : SATURATION_COLUMNS) {
+            header.append(padLeft(column, pad(column))).append(sep);
+        }
+        System.out.println(header);
+        for (Entry<String, List<JsonObject>> entry : versions.entrySet()) {
+            Runs runs = new Runs(entry.getValue());
+            List<JsonObject> knees = entry.getValue().stream()
+                    .map(r -> r.getJsonObject("saturation").getJsonObject("knee")).filter(Objects::nonNull).toList();
+            List<String> values = new ArrayList<>();
+            values.add(entry.getKey());
+            values.add(String.valueOf(runs.throughput.length));
+            values.add(knees.isEmpty() ? "-"
+                    : String.format("%.0f", Statistics.median(knees.stream().mapToDouble(k -> k.getInteger("clients"))
+                            .toArray())));
+            values.add(knees.isEmpty() ? "-"
+                    : String.format("%.0f", Statistics.median(knees.stream().mapToDouble(k -> k.getInteger("rate"))
+                            .toArray())));
+            values.add(String.format("%.0f", Statistics.median(runs.throughput)));
+            values.add(String.format("+/-%.0f", Statistics.confidenceInterval(runs.throughput)));
+            values.add(latency(runs.p99));
+            values.add(runs.serverCpu.length > 0 ? String.format("%.1f", Statistics.median(runs.serverCpu)) : "-");
+            String verdict;
+            if (baselineRuns == null || entry.getKey().equals(baseline)) {
+                values.add("-");
+                verdict = baselineRuns != null ? "baseline" : "-";
+            } else {
+                Comparison throughput = new Comparison(baselineRuns.throughput, runs.throughput, alpha, threshold);
+                values.add(throughput.toString());
+                if (throughput.significantDecrease()) {
+                    verdict = "REGRESSION";
+                    regression = true;
+                } else if (throughput.significantIncrease()) {
+                    verdict = "improvement";
+                } else {
+                    verdict = "no change";
                 }
-                if (f2Name.startsWith("999-SNAPSHOT")) {
-                    return -1;
+            }
+            values.add(verdict);
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < SATURATION_COLUMNS.size(); i++) {
+                String column = SATURATION_COLUMNS.get(i);
+                row.append(i == 0 ? padRight(values.get(i), pad(column)) : padLeft(values.get(i), pad(column)))
+                        .append(sep);
+            }
+            System.out.println(row);
+        }
+        return regression;
+    }
+
+    static final List<String> SATURATION_COLUMNS = List.of("Version", "Runs", "Clients", "Offered msgs/s",
+            "Max msgs/s at SLO", "95% CI", "p99 (us)", "CPU us/msg", "vs baseline", "Result");
+
+    /**
+     * Print the startup times - one row per server and version. The medians of all runs are used.
+     */
+    static void printStartup(String variant, Map<String, Map<String, List<JsonObject>>> servers) {
+        System.out.printf("%nVariant: %s [startup]%n", variant);
+        final String sep = "|";
+        StringBuilder header = new StringBuilder();
+        for (String column : STARTUP_COLUMNS) {
+            header.append(padLeft(column, pad(column))).append(sep);
+        }
+        System.out.println(header);
+        for (Entry<String, Map<String, List<JsonObject>>> server : servers.entrySet()) {
+            for (Entry<String, List<JsonObject>> version : server.getValue().entrySet()) {
+                List<JsonObject> startups = version.getValue().stream().map(r -> r.getJsonObject("startup"))
+                        .filter(Objects::nonNull).toList();
+                List<String> values = new ArrayList<>();
+                values.add(server.getKey());
+                values.add(version.getKey());
+                values.add(String.valueOf(startups.size()));
+                for (String metric : List.of("timeToConnect", "timeToFirstEcho", "timeToStop")) {
+                    values.add(String.format("%.1f",
+                            Statistics.median(startups.stream().mapToDouble(j -> j.getDouble(metric)).toArray())));
+                }
+                values.add(String.format("%.1f", Statistics.median(startups.stream()
+                        .mapToDouble(j -> j.getLong("rssAfterFirstEcho") / (1024.0 * 1024.0)).toArray())));
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < STARTUP_COLUMNS.size(); i++) {
+                    String column = STARTUP_COLUMNS.get(i);
+                    row.append(i < 2 ? padRight(values.get(i), pad(column)) : padLeft(values.get(i), pad(column)))
+                            .append(sep);
+                }
+                System.out.println(row);
+            }
+        }
+    }
+
+    static final List<String> STARTUP_COLUMNS = List.of("Server", "Version", "Runs", "Connect (ms)",
+            "First echo (ms)", "Stop (ms)", "RSS (MB)");
+
+    /**
+     * Print the memory per connection of the idle mode - one row per server, version and number of connections. The
+     * medians of all runs are used.
+     */
+    static void printMemory(String variant, Map<String, Map<String, List<JsonObject>>> servers) {
+        System.out.printf("%nVariant: %s [bytes per idle connection]%n", variant);
+        final String sep = "|";
+        StringBuilder header = new StringBuilder();
+        for (String column : MEMORY_COLUMNS) {
+            header.append(padLeft(column, pad(column))).append(sep);
+        }
+        System.out.println(header);
+        for (Entry<String, Map<String, List<JsonObject>>> server : servers.entrySet()) {
+            for (Entry<String, List<JsonObject>> version : server.getValue().entrySet()) {
+                // connections -> metric -> values of all runs
+                Map<Integer, Map<String, List<Double>>> points = new TreeMap<>();
+                for (JsonObject result : version.getValue()) {
+                    JsonObject idle = result.getJsonObject("idle");
+                    if (idle == null) {
+                        continue;
+                    }
+                    for (Object point : idle.getJsonArray("curve")) {
+                        JsonObject p = (JsonObject) point;
+                        Map<String, List<Double>> metrics = points.computeIfAbsent(p.getInteger("connections"),
+                                k -> new HashMap<>());
+                        for (String metric : Idle.MEMORY) {
+                            Double value = p.getDouble(metric + "PerConnection");
+                            if (value != null) {
+                                metrics.computeIfAbsent(metric, k -> new ArrayList<>()).add(value);
+                            }
+                        }
+                    }
                 }
-                String[] f1Parts = f1Name.split("\\.");
-                String[] f2Parts = f2Name.split("\\.");
-
-                int result = 0;
-                for (int i = 0; i < 3; i++) {
-                    int f1Val = Integer.parseInt(f1Parts[i]);
-                    int f2Val = Integer.parseInt(f2Parts[i]);
-                    result = Integer.compare(f1Val, f2Val);
-                    if (result != 0) {
-                        return result;
+                for (Entry<Integer, Map<String, List<Double>>> point : points.entrySet()) {
+                    List<String> values = new ArrayList<>();
+                    values.add(server.getKey());
+                    values.add(version.getKey());
+                    values.add(String.valueOf(point.getKey()));
+                    for (String metric : Idle.MEMORY) {
+                        List<Double> v = point.getValue().get(metric);
+                        values.add(v != null
+                                ? String.format("%.0f", Statistics.median(v.stream().mapToDouble(d -> d).toArray()))
+                                : "-");
                     }
+                    StringBuilder row = new StringBuilder();
+                    for (int i = 0; i < MEMORY_COLUMNS.size(); i++) {
+                        String column = MEMORY_COLUMNS.get(i);
+                        row.append(i < 2 ? padRight(values.get(i), pad(column)) : padLeft(values.get(i), pad(column)))
+                                .append(sep);
+                    }
+                    System.out.println(row);
                 }
-                return result;
             }
-        });
+        }
+    }
 
-        // Print the summary table
+    /**
+     * Print the results of the routes mode - one row per server, version, kind of routes and number of routes. The
+     * medians of all runs are used. The last column is the handshake p50 relative to the smallest number of routes, i.e.
+     * a ratio well below the ratio of the route counts means that the route matching scales sub-linearly.
+     */
+    static void printRoutes(Map<String, Map<String, Map<String, List<JsonObject>>>> results) {
+        // server -> version -> kind -> count -> runs
+        Map<String, Map<String, Map<String, Map<Integer, List<JsonObject>>>>> routes = new TreeMap<>(
+                SummaryTable::compareServers);
+        for (Map<String, Map<String, List<JsonObject>>> servers : results.values()) {
+            for (Entry<String, Map<String, List<JsonObject>>> server : servers.entrySet()) {
+                for (Entry<String, List<JsonObject>> version : server.getValue().entrySet()) {
+                    for (JsonObject result : version.getValue()) {
+                        JsonObject r = result.getJsonObject("routes");
+                        if (r == null) {
+                            continue;
+                        }
+                        routes.computeIfAbsent(server.getKey(), k -> new TreeMap<>(SummaryTable::compareVersions))
+                                .computeIfAbsent(version.getKey(), k -> new TreeMap<>())
+                                .computeIfAbsent(r.getString("kind"), k -> new TreeMap<>())
+                                .computeIfAbsent(r.getInteger("count"), k -> new ArrayList<>()).add(result);
+                    }
+                }
+            }
+        }
+        if (routes.isEmpty()) {
+            return;
+        }
+        System.out.printf("%nRoutes [handshake and message latency vs number of routes]%n");
         final String sep = "|";
-        System.out.println(
-                padLeft("Version") + sep + padLeft("Clients") + sep + padLeft("Messages") + sep + padLeft("Time") + sep);
-        for (File file : files) {
-            try {
-                JsonObject json = new JsonObject(Files.readString(file.toPath(), StandardCharsets.UTF_8));
-                System.out.println(padRight(json.getString("quarkusVersion")) + sep
-                        + padLeft(json.getString("numberOfClients")) + sep
-                        + padLeft(json.getString("numberOfMessages")) + sep
-                        + padLeft(json.getString("timeTaken") + "ms") + sep);
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to read result file: " + file);
+        StringBuilder header = new StringBuilder();
+        for (String column : ROUTES_COLUMNS) {
+            header.append(padLeft(column, pad(column))).append(sep);
+        }
+        System.out.println(header);
+        for (Entry<String, Map<String, Map<String, Map<Integer, List<JsonObject>>>>> server : routes.entrySet()) {
+            for (Entry<String, Map<String, Map<Integer, List<JsonObject>>>> version : server.getValue().entrySet()) {
+                for (Entry<String, Map<Integer, List<JsonObject>>> kind : version.getValue().entrySet()) {
+                    Integer minCount = null;
+                    double minHandshake = 0;
+                    for (Entry<Integer, List<JsonObject>> count : kind.getValue().entrySet()) {
+                        Runs runs = new Runs(count.getValue());
+                        List<JsonObject> handshakes = count.getValue().stream()
+                                .map(r -> r.getJsonObject("routes").getJsonObject("handshake")).toList();
+                        double handshakeP50 = Statistics
+                                .median(handshakes.stream().mapToDouble(h -> h.getDouble("p50")).toArray());
+                        if (minCount == null) {
+                            minCount = count.getKey();
+                            minHandshake = handshakeP50;
+                        }
+                        List<String> values = new ArrayList<>();
+                        values.add(server.getKey());
+                        values.add(version.getKey());
+                        values.add(kind.getKey());
+                        values.add(String.valueOf(count.getKey()));
+                        values.add(String.valueOf(runs.time.length));
+                        values.add(String.format("%.1f", handshakeP50));
+                        values.add(latency(handshakes.stream().mapToDouble(h -> h.getDouble("p99")).toArray()));
+                        values.add(String.format("%.0f", Statistics.median(runs.throughput)));
+                        values.add(latency(runs.p99));
+                        values.add(runs.serverCpu.length > 0 ? String.format("%.1f", Statistics.median(runs.serverCpu))
+                                : "-");
+                        values.add(minCount.equals(count.getKey()) ? "-"
+                                : String.format("x%.2f (routes x%.0f)", handshakeP50 / minHandshake,
+                                        (double) count.getKey() / minCount));
+                        StringBuilder row = new StringBuilder();
+                        for (int i = 0; i < ROUTES_COLUMNS.size(); i++) {
+                            String column = ROUTES_COLUMNS.get(i);
+                            row.append(i < 3 ? padRight(values.get(i), pad(column))
+                                    : padLeft(values.get(i), pad(column))).append(sep);
+                        }
+                        System.out.println(row);
+                    }
+                }
+            }
+        }
+    }
+
+    static final List<String> ROUTES_COLUMNS = List.of("Server", "Version", "Kind", "Routes", "Runs",
+            "Handshake p50 (us)", "Handshake p99 (us)", "Msgs/s", "p99 (us)", "CPU us/msg", "Handshake vs fewest");
+
+    static final List<String> MEMORY_COLUMNS = List.of("Server", "Version", "Connections", "Heap B/conn",
+            "RSS B/conn", "Direct B/conn", "Netty B/conn");
+
+    static final List<String> COLUMNS = List.of("Version", "Runs", "Clients", "Messages", "Time", "Msgs/s", "Stddev",
+            "95% CI", "p50 (us)", "p99 (us)", "p99.9 (us)", "Alloc B/msg", "Wire B/msg", "CPU us/msg",
+            "Msgs/s vs baseline", "p99 vs baseline", "Result");
+
+    static String latency(double[] values) {
+        return values.length > 0 ? String.format("%.1f", Statistics.median(values)) : "-";
+    }
+
+    /**
+     * Metrics of all runs of a specific version and variant.
+     */
+    static class Runs {
+
+        final double[] time;
+        final double[] throughput;
+        final double[] p50;
+        final double[] p99;
+        final double[] p999;
+        // Only if recorded with JFR
+        final double[] allocated;
+        // Only on Linux
+        final double[] wire;
+        // Only if the server metrics are available
+        final double[] serverCpu;
+
+        Runs(List<JsonObject> results) {
+            time = results.stream().mapToDouble(r -> r.getLong("timeTaken")).toArray();
+            // Older results do not contain the throughput
+            throughput = results.stream().mapToDouble(r -> r.containsKey("throughput") ? r.getDouble("throughput")
+                    : 1000.0 * r.getLong("numberOfClients") * r.getLong("numberOfMessages") / r.getLong("timeTaken"))
+                    .toArray();
+            List<JsonObject> latencies = results.stream().map(r -> r.getJsonObject("latency")).filter(Objects::nonNull)
+                    .toList();
+            p50 = latencies.stream().mapToDouble(l -> l.getDouble("p50")).toArray();
+            p99 = latencies.stream().mapToDouble(l -> l.getDouble("p99")).toArray();
+            p999 = latencies.stream().mapToDouble(l -> l.getDouble("p99.9")).toArray();
+            allocated = results.stream().map(r -> r.getJsonObject("jfr")).filter(Objects::nonNull)
+                    .filter(j -> j.containsKey("bytesPerMessage")).mapToDouble(j -> j.getDouble("bytesPerMessage"))
+                    .toArray();
+            wire = results.stream().map(r -> r.getJsonObject("wire")).filter(Objects::nonNull)
+                    .mapToDouble(w -> w.getDouble("bytesPerMessage")).toArray();
+            serverCpu = results.stream().map(r -> r.getJsonObject("cpuPerMessage")).filter(Objects::nonNull)
+                    .filter(c -> c.containsKey("server")).mapToDouble(c -> c.getDouble("server")).toArray();
+        }
+
+    }
+
+    /**
+     * The difference of the medians and the p-value of the Mann-Whitney U test.
+     */
+    static class Comparison {
+
+        final double difference;
+        final double pValue;
+        final boolean significant;
+
+        Comparison(double[] baseline, double[] values, double alpha, double threshold) {
+            double base = Statistics.median(baseline);
+            difference = base != 0 ? 100 * (Statistics.median(values) - base) / base : Double.NaN;
+            pValue = Statistics.mannWhitney(baseline, values);
+            significant = pValue < alpha && Math.abs(difference) > threshold;
+        }
+
+        boolean significantIncrease() {
+            return significant && difference > 0;
+        }
+
+        boolean significantDecrease() {
+            return significant && difference < 0;
+        }
+
+        @Override
+        public String toString() {
+            if (Double.isNaN(pValue)) {
+                return "-";
             }
+            return String.format("%+.1f%% p=%.3f%s", difference, pValue, significant ? "*" : "");
         }
+
+    }
+
+    // The "next" server goes first
+    static int compareServers(String s1, String s2) {
+        if (s1.equals(s2)) {
+            return 0;
+        }
+        if (s1.equals("next")) {
+            return -1;
+        }
+        if (s2.equals("next")) {
+            return 1;
+        }
+        return s1.compareTo(s2);
+    }
+
+    static int compareVersions(String v1, String v2) {
+        if (v1.equals(v2)) {
+            return 0;
+        }
+        if (v1.startsWith("999-SNAPSHOT")) {
+            return 1;
+        }
+        if (v2.startsWith("999-SNAPSHOT")) {
+            return -1;
+        }
+        String[] v1Parts = v1.split("\\.");
+        String[] v2Parts = v2.split("\\.");
+
+        int result = 0;
+        for (int i = 0; i < 3; i++) {
+            int v1Val = Integer.parseInt(v1Parts[i]);
+            int v2Val = Integer.parseInt(v2Parts[i]);
+            result = Integer.compare(v1Val, v2Val);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return v1.compareTo(v2);
+    }
+
+    static int pad(String header) {
+        return Math.max(DEFAULT_PAD, header.length() + 1);
     }
 
     static int DEFAULT_PAD = 15;
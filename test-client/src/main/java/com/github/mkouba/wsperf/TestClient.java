@@ -1,29 +1,42 @@
 package com.github.mkouba.wsperf;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
+import javax.net.ssl.SSLSession;
+
+import org.HdrHistogram.Histogram;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import io.quarkus.logging.Log;
 import io.quarkus.runtime.QuarkusApplication;
 import io.quarkus.runtime.annotations.QuarkusMain;
-import io.vertx.core.Context;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.WebSocket;
-import io.vertx.core.http.WebSocketClient;
+import io.vertx.core.http.WebSocketClientOptions;
 import io.vertx.core.http.WebSocketConnectOptions;
-import io.vertx.core.impl.VertxImpl;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.ClientOptionsBase;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.PfxOptions;
 import jakarta.inject.Inject;
 
 @QuarkusMain(name = "test")
@@ -44,60 +57,630 @@ public class TestClient implements QuarkusApplication {
     @ConfigProperty(name = "server.path", defaultValue = "/to-lower-case")
     String serverPath;
 
+    /**
+     * The tested server implementation, i.e. {@code next} or {@code legacy}. By default, the value reported by the server
+     * metrics is used.
+     */
+    @ConfigProperty(name = "server.type")
+    Optional<String> serverType;
+
+    /**
+     * The Quarkus version of the tested server. By default, the version sent by the server in the greeting is used. It
+     * should be set if the version is not available at runtime, e.g. in a native image.
+     */
+    @ConfigProperty(name = "server.quarkus-version")
+    Optional<String> serverQuarkusVersion;
+
+    /**
+     * The name of the tested variant, e.g. {@code serial-worker}. By default, the server path without the leading slash
+     * is used.
+     */
+    @ConfigProperty(name = "variant")
+    Optional<String> variant;
+
+    /**
+     * {@code echo} - each connection sends messages and receives the replies, or {@code broadcast} - the first
+     * {@code broadcast.publishers} connections send messages and all connections, including the publishers, receive
+     * every message. The broadcast mode is meant to be used with the {@code /broadcast} endpoint. {@code churn} -
+     * connections are opened and closed continuously, see {@link Churn}. {@code idle} - idle connections are opened in
+     * steps and the server memory is sampled at each step, see {@link Idle}. {@code startup} - the server is launched
+     * and the time to the first echo is measured, see {@link Startup}. {@code orchestrate} - the servers are built,
+     * started, warmed up and benchmarked for each Quarkus version, see {@link Orchestrator}. {@code routes} - like
+     * {@code echo} but the connections are spread across the generated endpoints of the next server built with
+     * {@code -Droutes}, and the handshake latency is measured as well. {@code saturation} - the max throughput that
+     * meets a latency SLO is searched for, see {@link Saturation}.
+     */
+    @ConfigProperty(name = "mode", defaultValue = "echo")
+    String mode;
+
+    /**
+     * The number of connections that publish messages in the broadcast mode; each publisher sends
+     * {@code number.of.messages} messages.
+     */
+    @ConfigProperty(name = "broadcast.publishers", defaultValue = "1")
+    int broadcastPublishers;
+
+    /**
+     * The number of generated endpoints the connections are spread across in the routes mode, i.e. the value of
+     * {@code -Droutes} the next server was built with. The connection {@code i} uses the route {@code i % routes.count}.
+     */
+    @ConfigProperty(name = "routes.count", defaultValue = "1")
+    int routesCount;
+
+    /**
+     * The kind of the generated endpoints, i.e. the value of {@code -Droutes.kind} the next server was built with:
+     * {@code static} or {@code param}. The connection index is used as the room id of a parameterized path.
+     */
+    @ConfigProperty(name = "routes.kind", defaultValue = "static")
+    String routesKind;
+
+    /**
+     * The connection rates tested in the churn mode, i.e. the number of new connections per second.
+     */
+    @ConfigProperty(name = "churn.rates", defaultValue = "100")
+    List<Integer> churnRates;
+
+    /**
+     * How long each rate is kept in the churn mode.
+     */
+    @ConfigProperty(name = "churn.step-duration", defaultValue = "10s")
+    Duration churnStepDuration;
+
+    /**
+     * The number of messages sent by each connection in the churn mode before the connection is closed.
+     */
+    @ConfigProperty(name = "churn.messages", defaultValue = "0")
+    int churnMessages;
+
+    /**
+     * The number of steps used to reach {@code number.of.clients} in the idle mode.
+     */
+    @ConfigProperty(name = "idle.steps", defaultValue = "5")
+    int idleSteps;
+
+    /**
+     * How long the connections are held idle before the server memory is sampled in the idle mode.
+     */
+    @ConfigProperty(name = "idle.hold", defaultValue = "5s")
+    Duration idleHold;
+
+    /**
+     * If set then each connection sends a ping frame at the given interval in the idle mode.
+     */
+    @ConfigProperty(name = "idle.ping-interval")
+    Optional<Duration> idlePingInterval;
+
+    @ConfigProperty(name = "server.memory.path", defaultValue = "/wsperf/memory")
+    String serverMemoryPath;
+
+    /**
+     * The command used to launch the server in the startup mode, e.g.
+     * {@code ../websocket-server-next/target/websocket-server-next-1.0.0-SNAPSHOT-runner}.
+     */
+    @ConfigProperty(name = "startup.command")
+    Optional<String> startupCommand;
+
     @ConfigProperty(name = "timeout", defaultValue = "60")
     long timeout;
 
     @ConfigProperty(name = "message-interval")
     Optional<Duration> messageInterval;
 
+    /**
+     * The number of messages per second sent across all connections. If set then the messages are sent at a constant
+     * rate and the {@code message-interval} is ignored. The rate must be positive.
+     */
+    @ConfigProperty(name = "target.rate")
+    Optional<Integer> targetRate;
+
+    /**
+     * The number of client event loops; must be positive. By default, the number of available processors is used.
+     */
+    @ConfigProperty(name = "event-loops")
+    Optional<Integer> eventLoops;
+
+    /**
+     * The max number of unacknowledged messages per connection. If set then each connection sends the next message only
+     * if a reply is received or the number of messages in flight is lower than this limit. {@code 1} means strict
+     * request/response. Must be positive and cannot be combined with {@code target.rate}.
+     */
+    @ConfigProperty(name = "max-in-flight")
+    Optional<Integer> maxInFlight;
+
+    /**
+     * The payload size spec, e.g. {@code fixed:128}, {@code uniform:16-1024} or {@code lognormal:256,1.0}. If not set
+     * then the constant {@code FOO} payload is used.
+     *
+     * @see Payloads
+     */
+    @ConfigProperty(name = "payload.size")
+    Optional<String> payloadSize;
+
+    /**
+     * {@code ascii} or {@code utf8}; the latter mixes ASCII with 2, 3 and 4 bytes UTF-8 characters.
+     */
+    @ConfigProperty(name = "payload.charset", defaultValue = "ascii")
+    String payloadCharset;
+
+    /**
+     * {@code text} or {@code binary}.
+     */
+    @ConfigProperty(name = "payload.frame", defaultValue = "text")
+    String payloadFrame;
+
+    /**
+     * The number of pre-generated payloads.
+     */
+    @ConfigProperty(name = "payload.count", defaultValue = "100")
+    int payloadCount;
+
+    @ConfigProperty(name = "payload.seed", defaultValue = "1")
+    long payloadSeed;
+
+    /**
+     * {@code random} or {@code compressible}.
+     *
+     * @see Payloads
+     */
+    @ConfigProperty(name = "payload.content", defaultValue = "random")
+    String payloadContent;
+
+    /**
+     * If set to {@code true} then the client offers the permessage-deflate extension. By default, the variant name is
+     * suffixed with {@code -deflate}.
+     */
+    @ConfigProperty(name = "compression", defaultValue = "false")
+    boolean compression;
+
+    /**
+     * The deflate compression level of the client, between 0 and 9.
+     */
+    @ConfigProperty(name = "compression.level")
+    Optional<Integer> compressionLevel;
+
+    /**
+     * If set to {@code true} then the client connects over TLS, i.e. {@code wss://}, and {@code server.port} must be the
+     * HTTPS port of the server. By default, the variant name is suffixed with {@code -tls}.
+     */
+    @ConfigProperty(name = "tls", defaultValue = "false")
+    boolean tls;
+
+    /**
+     * {@code jdk} or {@code openssl}; the OpenSSL provider is only used if available. By default, the variant name is
+     * suffixed with {@code -openssl} if the OpenSSL provider is used.
+     */
+    @ConfigProperty(name = "tls.provider", defaultValue = "jdk")
+    String tlsProvider;
+
+    /**
+     * The PKCS12 trust store used to verify the server certificate, e.g. the generated server keystore. If not set then
+     * all certificates are trusted.
+     */
+    @ConfigProperty(name = "tls.trust-store")
+    Optional<String> tlsTrustStore;
+
+    @ConfigProperty(name = "tls.trust-store.password", defaultValue = "password")
+    String tlsTrustStorePassword;
+
+    /**
+     * The network interface used to measure the bytes on the wire, i.e. the interface the server is reached through.
+     *
+     * @see WireBytes
+     */
+    @ConfigProperty(name = "wire.interface", defaultValue = "lo")
+    String wireInterface;
+
+    /**
+     * If set to {@code true} then the server metrics are reset before the messages are sent and pulled when all replies
+     * are received. The metrics are added to the result as {@code serverMetrics}.
+     */
+    @ConfigProperty(name = "server.metrics", defaultValue = "true")
+    boolean serverMetrics;
+
+    @ConfigProperty(name = "server.metrics.path", defaultValue = "/wsperf/metrics")
+    String serverMetricsPath;
+
+    /**
+     * If set to {@code true} then a JFR recording of the server is started before the messages are sent and stopped when
+     * all replies are received. The allocation and GC profile is added to the result as {@code jfr}. The recording file
+     * is analyzed locally, i.e. the server must run on the same host.
+     *
+     * @see JfrAnalyzer
+     */
+    @ConfigProperty(name = "server.jfr", defaultValue = "false")
+    boolean serverJfr;
+
+    @ConfigProperty(name = "server.jfr.path", defaultValue = "/wsperf/jfr")
+    String serverJfrPath;
+
+    /**
+     * The length of an interval of the time series.
+     *
+     * @see TimeSeries
+     */
+    @ConfigProperty(name = "time-series.interval", defaultValue = "1s")
+    Duration timeSeriesInterval;
+
+    /**
+     * The time series of each run is written in a separate JSONL file.
+     */
+    @ConfigProperty(name = "time-series.dir", defaultValue = "target/time-series")
+    String timeSeriesDir;
+
+    /**
+     * The number of consecutive intervals that must be stable to detect the steady state.
+     */
+    @ConfigProperty(name = "steady-state.window", defaultValue = "5")
+    int steadyStateWindow;
+
+    /**
+     * The max coefficient of variation of the receive rate and the median latency in a stable window.
+     */
+    @ConfigProperty(name = "steady-state.tolerance", defaultValue = "0.1")
+    double steadyStateTolerance;
+
+    /**
+     * If set to {@code true} and the steady state is detected then the reported throughput and latency only include the
+     * steady state, i.e. the warmup is trimmed. The values of the full run are added to the result as {@code fullRun}.
+     */
+    @ConfigProperty(name = "steady-state.trim", defaultValue = "false")
+    boolean steadyStateTrim;
+
+    /**
+     * The results are never overwritten, i.e. each run is stored in a separate file.
+     */
+    @ConfigProperty(name = "results.dir", defaultValue = "target/results")
+    String resultsDir;
+
+    /**
+     * The number of worker processes. If greater than {@code 1} then this process acts as a coordinator that launches
+     * the workers locally, each with a disjoint range of clients, and merges their results.
+     *
+     * @see Coordinator
+     */
+    @ConfigProperty(name = "workers", defaultValue = "1")
+    int workers;
+
+    /**
+     * Set by the coordinator for each worker process.
+     */
+    @ConfigProperty(name = "worker.index")
+    Optional<Integer> workerIndex;
+
+    @ConfigProperty(name = "coordinator.host", defaultValue = "localhost")
+    String coordinatorHost;
+
+    /**
+     * The port of the start barrier. By default, a random free port is used by the coordinator.
+     */
+    @ConfigProperty(name = "coordinator.port", defaultValue = "0")
+    int coordinatorPort;
+
+    /**
+     * The local addresses assigned round-robin to the workers, e.g. {@code 127.0.0.2,127.0.0.3}. Each local address has
+     * its own range of ephemeral ports.
+     */
+    @ConfigProperty(name = "worker.local-addresses")
+    Optional<List<String>> workerLocalAddresses;
+
+    /**
+     * The local address the client connections are bound to.
+     */
+    @ConfigProperty(name = "client.local-address")
+    Optional<String> clientLocalAddress;
+
+    /**
+     * The Quarkus versions tested in the orchestrate mode.
+     *
+     * @see Orchestrator
+     */
+    @ConfigProperty(name = "orchestrator.quarkus-versions", defaultValue = "3.15.1,3.28.4")
+    List<String> orchestratorQuarkusVersions;
+
+    /**
+     * {@code next}, {@code legacy} and/or {@code next-native}, i.e. the native executable of the {@code next} server.
+     */
+    @ConfigProperty(name = "orchestrator.servers", defaultValue = "next,legacy")
+    List<String> orchestratorServers;
+
+    /**
+     * The endpoint variants, i.e. the server paths without the leading slash. The legacy server only implements
+     * {@code to-lower-case}.
+     */
+    @ConfigProperty(name = "orchestrator.variants", defaultValue = "to-lower-case")
+    List<String> orchestratorVariants;
+
+    /**
+     * The number of benchmark runs per version, server and variant.
+     */
+    @ConfigProperty(name = "orchestrator.runs", defaultValue = "5")
+    int orchestratorRuns;
+
+    @ConfigProperty(name = "orchestrator.warmup.clients", defaultValue = "500")
+    int orchestratorWarmupClients;
+
+    /**
+     * The warm-up is repeated until the JIT compilation time of a round is below
+     * {@code orchestrator.warmup.compilation-threshold} but at most {@code orchestrator.warmup.max-rounds} times.
+     */
+    @ConfigProperty(name = "orchestrator.warmup.max-rounds", defaultValue = "3")
+    int orchestratorWarmupMaxRounds;
+
+    @ConfigProperty(name = "orchestrator.warmup.compilation-threshold", defaultValue = "100ms")
+    Duration orchestratorWarmupCompilationThreshold;
+
+    /**
+     * If set to {@code false} then the servers are not built, i.e. the server module must be built for each version
+     * before.
+     */
+    @ConfigProperty(name = "orchestrator.build", defaultValue = "true")
+    boolean orchestratorBuild;
+
+    /**
+     * The directory that contains the server modules.
+     */
+    @ConfigProperty(name = "orchestrator.modules-dir", defaultValue = "..")
+    String orchestratorModulesDir;
+
+    /**
+     * Additional JVM arguments of the server process.
+     */
+    @ConfigProperty(name = "orchestrator.server-args")
+    Optional<String> orchestratorServerArgs;
+
+    /**
+     * If set to {@code true} then the servers are built with a self-signed certificate and each variant is also tested
+     * over TLS. {@code tls.provider} is used by both the servers and the client.
+     */
+    @ConfigProperty(name = "orchestrator.tls", defaultValue = "false")
+    boolean orchestratorTls;
+
+    /**
+     * A file with additional benchmarks; each line contains a server (e.g. {@code next} or {@code *}) and the client
+     * arguments, optionally mixed with the server and build arguments.
+     *
+     * @see Orchestrator
+     */
+    @ConfigProperty(name = "orchestrator.plan")
+    Optional<String> orchestratorPlan;
+
+    /**
+     * If set to {@code true} then the startup of each server is measured after the benchmarks.
+     *
+     * @see Startup
+     */
+    @ConfigProperty(name = "orchestrator.startup", defaultValue = "false")
+    boolean orchestratorStartup;
+
+    /**
+     * If set then each variant is profiled with async profiler and a flame graph is generated in
+     * {@code orchestrator.modules-dir}.
+     */
+    @ConfigProperty(name = "orchestrator.async-profiler")
+    Optional<String> orchestratorAsyncProfiler;
+
+    /**
+     * The latency SLO of the saturation mode: the p99 latency of a probe must not exceed this value.
+     */
+    @ConfigProperty(name = "saturation.slo.p99", defaultValue = "10ms")
+    Duration saturationSloP99;
+
+    /**
+     * The max number of errors of a probe in the saturation mode.
+     */
+    @ConfigProperty(name = "saturation.slo.errors", defaultValue = "0")
+    long saturationSloErrors;
+
+    /**
+     * A probe of the saturation mode only passes if at least this fraction of the offered rate is achieved.
+     */
+    @ConfigProperty(name = "saturation.slo.sustained", defaultValue = "0.95")
+    double saturationSloSustained;
+
+    /**
+     * The numbers of connections the rate is searched for in the saturation mode; {@code number.of.clients} by default.
+     */
+    @ConfigProperty(name = "saturation.clients")
+    Optional<List<Integer>> saturationClients;
+
+    /**
+     * The offered rate of the first probe in messages per second.
+     */
+    @ConfigProperty(name = "saturation.start-rate", defaultValue = "1000")
+    int saturationStartRate;
+
+    /**
+     * The offered rate is multiplied by this factor until the SLO is broken.
+     */
+    @ConfigProperty(name = "saturation.factor", defaultValue = "2")
+    double saturationFactor;
+
+    /**
+     * The binary search stops once the gap between the passed and the failed rate is below this fraction of the passed
+     * rate.
+     */
+    @ConfigProperty(name = "saturation.precision", defaultValue = "0.05")
+    double saturationPrecision;
+
+    /**
+     * The max number of probes per number of connections.
+     */
+    @ConfigProperty(name = "saturation.max-probes", defaultValue = "20")
+    int saturationMaxProbes;
+
+    /**
+     * The time the offered rate of a probe is sustained, i.e. the number of messages sent by a probe.
+     */
+    @ConfigProperty(name = "saturation.probe-duration", defaultValue = "10s")
+    Duration saturationProbeDuration;
+
     @Inject
     Vertx vertx;
 
+    Payloads payloads;
+
     @Override
     public int run(String... args) throws Exception {
+        if (targetRate.isPresent() && targetRate.get() <= 0) {
+            throw new IllegalStateException("target.rate must be positive: " + targetRate.get());
+        }
+        if (maxInFlight.isPresent() && maxInFlight.get() < 1) {
+            throw new IllegalStateException("max-in-flight must be positive: " + maxInFlight.get());
+        }
+        if (eventLoops.isPresent() && eventLoops.get() < 1) {
+            throw new IllegalStateException("event-loops must be positive: " + eventLoops.get());
+        }
+        if (targetRate.isPresent() && maxInFlight.isPresent()) {
+            throw new IllegalStateException("target.rate and max-in-flight cannot be combined");
+        }
+        boolean broadcast = "broadcast".equals(mode);
+        if (broadcast) {
+            if (maxInFlight.isPresent()) {
+                throw new IllegalStateException("max-in-flight cannot be used in the broadcast mode");
+            }
+            if (workers > 1) {
+                throw new IllegalStateException("workers cannot be used in the broadcast mode");
+            }
+            if (broadcastPublishers < 1 || broadcastPublishers > numberOfClients) {
+                throw new IllegalStateException("broadcast.publishers must be between 1 and number.of.clients");
+            }
+        } else if ("churn".equals(mode)) {
+            if (workers > 1) {
+                throw new IllegalStateException("workers cannot be used in the churn mode");
+            }
+            return new Churn(this).run();
+        } else if ("idle".equals(mode)) {
+            if (workers > 1) {
+                throw new IllegalStateException("workers cannot be used in the idle mode");
+            }
+            return new Idle(this).run();
+        } else if ("startup".equals(mode)) {
+            return new Startup(this).run();
+        } else if ("orchestrate".equals(mode)) {
+            return new Orchestrator(this).run();
+        } else if ("saturation".equals(mode)) {
+            return new Saturation(this).run();
+        } else if ("routes".equals(mode)) {
+            if (workers > 1) {
+                throw new IllegalStateException("workers cannot be used in the routes mode");
+            }
+            if (routesCount < 1) {
+                throw new IllegalStateException("routes.count must be positive");
+            }
+            if (!"static".equals(routesKind) && !"param".equals(routesKind)) {
+                throw new IllegalStateException("Unsupported routes.kind: " + routesKind);
+            }
+        } else if (!"echo".equals(mode)) {
+            throw new IllegalStateException("Unsupported mode: " + mode);
+        }
+        if (workers > 1 && workerIndex.isEmpty()) {
+            return new Coordinator(this).run(args);
+        }
+        boolean routes = "routes".equals(mode);
         long start = System.nanoTime();
+        String variantName = variant.orElse((routes ? "routes-" + routesKind + "-" + routesCount
+                : serverPath.startsWith("/") ? serverPath.substring(1) : serverPath) + variantSuffix());
+        int numberOfLoops = Math.min(numberOfClients, eventLoops.orElse(Runtime.getRuntime().availableProcessors()));
         Log.infof(
-                "Test client started [number-of-clients: %s, number-of-messages: %s, server.host: %s, server.port: %s, server.path: %s]",
-                numberOfClients, numberOfMessages, serverHost, serverPort, serverPath);
+                "Test client started [number-of-clients: %s, number-of-messages: %s, server.host: %s, server.port: %s, server.path: %s, mode: %s, target.rate: %s, max-in-flight: %s, event-loops: %s, payload.size: %s, payload.charset: %s, payload.frame: %s]",
+                numberOfClients, numberOfMessages, serverHost, serverPort, serverPath, mode, targetRate.orElse(null),
+                maxInFlight.orElse(null), numberOfLoops, payloadSize.orElse(null), payloadCharset, payloadFrame);
 
-        List<WebSocket> clients = new CopyOnWriteArrayList<>();
-        int numberOfClientMessages = numberOfClients * numberOfMessages;
-        CountDownLatch receivedMessagesLatch = new CountDownLatch(numberOfClientMessages);
+        int numberOfSenders = broadcast ? broadcastPublishers : numberOfClients;
+        int numberOfClientMessages = numberOfSenders * numberOfMessages;
+        // In the broadcast mode each message is delivered to all connections
+        int numberOfDeliveries = broadcast ? Math.multiplyExact(numberOfClientMessages, numberOfClients)
+                : numberOfClientMessages;
+        CountDownLatch receivedMessagesLatch = new CountDownLatch(numberOfDeliveries);
         CountDownLatch sendMessagesLatch = new CountDownLatch(numberOfClientMessages);
-        String payload = "FOO";
+        payloads = generatePayloads();
+        LatencyStats latencies = new LatencyStats();
+        LatencyStats handshakes = routes ? new LatencyStats() : null;
+        FanOutStats fanOut = broadcast ? new FanOutStats(numberOfClientMessages) : null;
         AtomicReference<String> quarkusVersion = new AtomicReference<>();
+        AtomicReference<String> extensions = new AtomicReference<>();
+        AtomicReference<JsonObject> tlsSession = new AtomicReference<>();
+        TimeSeries timeSeries = new TimeSeries(timeSeriesInterval.toMillis(),
+                Path.of(timeSeriesDir, timeSeriesFile(variantName)), broadcast ? numberOfClients : 1);
+
+        LongAdder success = new LongAdder();
+        LongAdder failure = new LongAdder();
+        LongAdder writeQueueFull = new LongAdder();
+        Function<ClientConnection, Handler<AsyncResult<Void>>> sendCallback = connection -> r -> {
+            if (r.succeeded()) {
+                success.increment();
+                timeSeries.sent.increment();
+            } else {
+                failure.increment();
+                timeSeries.errors.increment();
+                Log.error("Error sending a message to " + connection, r.cause());
+            }
+            sendMessagesLatch.countDown();
+        };
+        ReplyHandler replyHandler = (connection, sent, id) -> {
+            if (sent != MessageTag.INVALID) {
+                long latency = System.nanoTime() - sent;
+                latencies.record(latency);
+                timeSeries.record(latency);
+                if (fanOut != null) {
+                    fanOut.record(id, latency);
+                }
+            } else {
+                timeSeries.errors.increment();
+            }
+            timeSeries.received.increment();
+            if (maxInFlight.isPresent()) {
+                connection.inFlight--;
+                sendPipelined(connection, sendCallback, writeQueueFull);
+            }
+            receivedMessagesLatch.countDown();
+        };
 
-        // Connect all clients
+        List<ClientLoop> loops = ClientLoop.deploy(vertx, numberOfLoops, clientOptions(numberOfClients), timeout);
+
+        // Connect all clients - the connections are sharded round-robin across the client event loops
         CountDownLatch connectedLatch = new CountDownLatch(numberOfClients);
+        // In the routes mode there are at most as many handshakes in flight as there are loops so that the handshake
+        // latency is not dominated by the waiting in the client and server queues
+        Semaphore pendingHandshakes = routes ? new Semaphore(numberOfLoops) : null;
         for (int i = 0; i < numberOfClients; i++) {
-            // TODO we don't want to use the same event loop for all clients
-            Context context = ((VertxImpl) vertx).createEventLoopContext();
-            context.runOnContext(v -> {
-                WebSocketClient client = vertx.createWebSocketClient();
-                WebSocketConnectOptions connectOptions = new WebSocketConnectOptions()
-                        .setHost(serverHost)
-                        .setPort(serverPort)
-                        .setURI(serverPath)
-                        .setAllowOriginHeader(false);
-                client.connect(connectOptions)
+            ClientLoop loop = loops.get(i % numberOfLoops);
+            boolean sender = i < numberOfSenders;
+            // Each sender sends exactly number.of.messages so the message ids are unique
+            long firstId = sender ? (long) i * numberOfMessages : -1;
+            WebSocketConnectOptions options = routes ? connectOptions(routePath(i)) : connectOptions();
+            if (pendingHandshakes != null && !pendingHandshakes.tryAcquire(timeout, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Unable to connect all clients...");
+            }
+            loop.context.runOnContext(v -> {
+                long connectStart = System.nanoTime();
+                loop.client.connect(options)
                         .onComplete(r -> {
+                            if (pendingHandshakes != null) {
+                                handshakes.record(System.nanoTime() - connectStart);
+                                pendingHandshakes.release();
+                            }
                             if (r.succeeded()) {
                                 WebSocket ws = r.result();
+                                ClientConnection connection = new ClientConnection(ws, firstId);
+                                extensions.compareAndSet(null, negotiatedExtensions(ws));
+                                if (tls) {
+                                    tlsSession.compareAndSet(null, tlsSession(ws));
+                                }
                                 ws.textMessageHandler(s -> {
                                     if (s.startsWith("_")) {
                                         quarkusVersion.compareAndSet(null, s.substring(1));
                                     } else {
-                                        if (!s.equals(payload.toLowerCase())) {
-                                            Log.errorf("Received invalid message from the server: %s", s);
-                                        }
-                                        receivedMessagesLatch.countDown();
-                                        long received = receivedMessagesLatch.getCount();
-                                        if (received % (numberOfClientMessages / 10) == 0) {
-                                            Log.infof("%s messages received", numberOfClientMessages - received);
-                                        }
+                                        replyHandler.reply(connection, validate(s),
+                                                fanOut != null ? MessageTag.id(s) : -1);
                                     }
                                 });
-                                clients.add(ws);
+                                ws.binaryMessageHandler(b -> replyHandler.reply(connection, validate(b),
+                                        fanOut != null ? MessageTag.id(b) : -1));
+                                loop.connections.add(connection);
+                                if (sender) {
+                                    loop.senders.add(connection);
+                                }
                                 connectedLatch.countDown();
                             } else {
                                 throw new IllegalStateException(r.cause());
@@ -110,39 +693,68 @@ public class TestClient implements QuarkusApplication {
             throw new IllegalStateException("Unable to connect all clients...");
         }
         Log.infof("%s clients connected", numberOfClients);
+        if (compression && !extensions.get().contains("permessage-deflate")) {
+            Log.warnf("Compression not negotiated [Sec-WebSocket-Extensions: %s]", extensions.get());
+        }
 
-        // Send messages
-        LongAdder success = new LongAdder();
-        LongAdder failure = new LongAdder();
-        for (int i = 0; i < numberOfMessages; i++) {
-            for (WebSocket ws : clients) {
-                ws.writeTextMessage(payload, r -> {
-                    if (r.succeeded()) {
-                        success.increment();
-                    } else {
-                        failure.increment();
-                        Log.error("Error sending a message to " + ws, r.cause());
-                    }
-                    sendMessagesLatch.countDown();
-                    long sent = sendMessagesLatch.getCount();
-                    if (sent % (numberOfClientMessages / 10) == 0) {
-                        Log.infof("%s messages sent", numberOfClientMessages - sent);
+        WorkerBarrier barrier = null;
+        if (workerIndex.isPresent()) {
+            // Wait until the clients of all workers are connected
+            barrier = WorkerBarrier.connect(coordinatorHost, coordinatorPort);
+            barrier.await(workerIndex.get(), 2 * timeout);
+        }
+
+        ServerHttpClient serverClient = null;
+        if (serverMetrics || serverJfr) {
+            serverClient = serverHttpClient();
+        }
+        if (serverMetrics) {
+            serverClient.delete(serverMetricsPath);
+        }
+        if (serverJfr) {
+            serverClient.post(serverJfrPath);
+        }
+
+        // Send messages - each loop sends the messages from its own connections
+        long sendTimeout = timeout;
+        if (targetRate.isPresent()) {
+            Log.infof("Sending %s messages at %s msg/s", numberOfClientMessages, targetRate.get());
+            sendTimeout += numberOfClientMessages / targetRate.get();
+        }
+        timeSeries.start();
+        long wireStart = WireBytes.read(wireInterface);
+        long sendStart = System.nanoTime();
+        for (ClientLoop loop : loops) {
+            loop.startCpuTime();
+            if (loop.senders.isEmpty()) {
+                continue;
+            }
+            if (targetRate.isPresent()) {
+                // The rate is split across the loops according to the number of senders
+                double loopRate = (double) targetRate.get() * loop.senders.size() / numberOfSenders;
+                loop.context.runOnContext(v -> sendAtRate(loop, loopRate, sendCallback));
+            } else if (maxInFlight.isPresent()) {
+                loop.context.runOnContext(v -> {
+                    for (ClientConnection connection : loop.connections) {
+                        sendPipelined(connection, sendCallback, writeQueueFull);
                     }
                 });
-            }
-            if (messageInterval.isPresent()) {
-                Log.infof("Message %s sent, wait for %s ms", i + 1, messageInterval.get().toMillis());
-                Thread.sleep(messageInterval.get().toMillis());
+            } else {
+                loop.context.runOnContext(v -> sendRound(loop, 0, sendCallback));
             }
         }
 
-        if (!sendMessagesLatch.await(timeout, TimeUnit.SECONDS)) {
+        if (!sendMessagesLatch.await(sendTimeout, TimeUnit.SECONDS)) {
             throw new IllegalStateException("Unable to send all messages in time...");
         }
 
         boolean failed = false;
         if (success.sum() == numberOfClientMessages) {
-            Log.infof("%s messages sent to each connected client", numberOfMessages);
+            if (broadcast) {
+                Log.infof("%s messages sent by each of %s publishers", numberOfMessages, numberOfSenders);
+            } else {
+                Log.infof("%s messages sent to each connected client", numberOfMessages);
+            }
             if (!receivedMessagesLatch.await(timeout, TimeUnit.SECONDS)) {
                 Log.warnf("Incorrect number of replies received: %s", receivedMessagesLatch.getCount());
                 failed = true;
@@ -151,20 +763,40 @@ public class TestClient implements QuarkusApplication {
             Log.warnf("%s failures when sending %s messages with %s clients", failure.sum(), numberOfMessages,
                     numberOfClients);
         }
+        long sendTime = System.nanoTime() - sendStart;
+        long wireEnd = WireBytes.read(wireInterface);
+        for (ClientLoop loop : loops) {
+            loop.stopCpuTime();
+        }
+        timeSeries.stop();
+        JsonObject recording = null;
+        if (serverJfr) {
+            recording = serverClient.json(HttpMethod.DELETE, serverJfrPath);
+        }
+        JsonObject metrics = null;
+        if (serverMetrics) {
+            metrics = serverClient.get(serverMetricsPath);
+        }
+        if (serverClient != null) {
+            serverClient.close();
+        }
 
         // Close all clients
         Log.infof("Closing %s clients", numberOfClients);
         CountDownLatch closedLatch = new CountDownLatch(numberOfClients);
-        for (WebSocket ws : clients) {
-            ws.close().onComplete(r -> {
-                if (r.succeeded()) {
-                    closedLatch.countDown();
-                } else {
-                    throw new IllegalStateException(r.cause());
+        for (ClientLoop loop : loops) {
+            loop.context.runOnContext(v -> {
+                for (ClientConnection connection : loop.connections) {
+                    connection.ws.close().onComplete(r -> {
+                        if (r.succeeded()) {
+                            closedLatch.countDown();
+                        } else {
+                            throw new IllegalStateException(r.cause());
+                        }
+                    });
                 }
             });
         }
-        clients.clear();
         if (!closedLatch.await(timeout, TimeUnit.SECONDS)) {
             throw new IllegalStateException("Unable to close all clients...");
         }
@@ -175,21 +807,414 @@ public class TestClient implements QuarkusApplication {
             return 1;
         }
 
-        Log.infof("Finished in %s ms", timeTaken);
+        Histogram histogram = latencies.merge();
+        Log.infof("Finished in %s ms [latency p50: %.1f us, p99: %.1f us, p99.9: %.1f us, max: %.1f us]", timeTaken,
+                LatencyStats.toMicros(histogram.getValueAtPercentile(50.0)),
+                LatencyStats.toMicros(histogram.getValueAtPercentile(99.0)),
+                LatencyStats.toMicros(histogram.getValueAtPercentile(99.9)),
+                LatencyStats.toMicros(histogram.getMaxValue()));
+        Histogram handshake = null;
+        if (handshakes != null) {
+            handshake = handshakes.merge();
+            Log.infof("%s connections spread across %s %s routes [handshake p50: %.1f us, p99: %.1f us, max: %.1f us]",
+                    numberOfClients, routesCount, routesKind,
+                    LatencyStats.toMicros(handshake.getValueAtPercentile(50.0)),
+                    LatencyStats.toMicros(handshake.getValueAtPercentile(99.0)),
+                    LatencyStats.toMicros(handshake.getMaxValue()));
+        }
+        Histogram lastDelivery = null;
+        if (fanOut != null) {
+            lastDelivery = fanOut.lastDelivery();
+            Log.infof("%s deliveries of %s messages [last delivery p50: %.1f us, p99: %.1f us, max: %.1f us]",
+                    numberOfDeliveries, lastDelivery.getTotalCount(),
+                    LatencyStats.toMicros(lastDelivery.getValueAtPercentile(50.0)),
+                    LatencyStats.toMicros(lastDelivery.getValueAtPercentile(99.0)),
+                    LatencyStats.toMicros(lastDelivery.getMaxValue()));
+        }
 
         LocalDateTime timestamp = LocalDateTime.now();
         JsonObject res = new JsonObject();
         res.put("timestamp", timestamp.toString());
         res.put("timeTaken", timeTaken);
-        res.put("quarkusVersion", quarkusVersion.get());
+        res.put("quarkusVersion", quarkusVersion(quarkusVersion.get()));
+        res.put("server", serverType(metrics));
+        res.put("variant", variantName);
         res.put("numberOfClients", numberOfClients);
         res.put("numberOfMessages", numberOfMessages);
+        res.put("sendTime", TimeUnit.NANOSECONDS.toMillis(sendTime));
+        // The number of messages received per second, i.e. the fan-out throughput in the broadcast mode
+        res.put("throughput", (double) numberOfDeliveries / sendTime * TimeUnit.SECONDS.toNanos(1));
+        res.put("deliveries", numberOfDeliveries);
+        if (targetRate.isPresent()) {
+            res.put("targetRate", targetRate.get());
+        }
+        if (maxInFlight.isPresent()) {
+            res.put("maxInFlight", maxInFlight.get());
+            res.put("writeQueueFull", writeQueueFull.sum());
+        }
+        res.put("payload", payloads.toJson());
+        if (compression) {
+            res.put("compression", new JsonObject()
+                    .put("level", compressionLevel.orElse(HttpClientOptions.DEFAULT_WEBSOCKET_COMPRESSION_LEVEL))
+                    .put("extensions", extensions.get()));
+        }
+        if (tls) {
+            res.put("tls", tlsSession.get());
+        }
+        JsonObject wire = WireBytes.toJson(wireInterface, wireStart, wireEnd, numberOfDeliveries);
+        if (wire != null) {
+            res.put("wire", wire);
+        }
+        res.put("latency", LatencyStats.toJson(histogram));
+        if (lastDelivery != null) {
+            JsonObject fanOutJson = new JsonObject();
+            fanOutJson.put("publishers", numberOfSenders);
+            fanOutJson.put("subscribers", numberOfClients);
+            fanOutJson.put("messages", numberOfClientMessages);
+            fanOutJson.put("deliveries", numberOfDeliveries);
+            // The time until the last subscriber received a message
+            fanOutJson.put("lastDelivery", LatencyStats.toJson(lastDelivery));
+            res.put("mode", mode);
+            res.put("broadcast", fanOutJson);
+        }
+        if (handshake != null) {
+            res.put("mode", mode);
+            res.put("routes", new JsonObject()
+                    .put("count", routesCount)
+                    .put("kind", routesKind)
+                    .put("handshake", LatencyStats.toJson(handshake)));
+        }
+        res.put("eventLoops", ClientLoop.cpuUsage(loops, sendTime));
+        res.put("cpuPerMessage", cpuPerMessage(ClientLoop.cpuTime(loops), metrics, numberOfDeliveries));
+        if (metrics != null) {
+            res.put("serverMetrics", metrics);
+        }
+        if (recording != null) {
+            res.put("jfr", analyzeRecording(recording, numberOfClientMessages));
+        }
+        addTimeSeries(res, timeSeries.toJson(steadyStateWindow, steadyStateTolerance));
 
-        File resultsDir = new File("target/results");
-        Files.createDirectories(resultsDir.toPath());
-        Files.writeString(new File(resultsDir, quarkusVersion.get() + ".json").toPath(), res.toString());
-
+        if (barrier != null) {
+            barrier.complete(res);
+            barrier.close();
+        } else {
+            writeResult(res);
+        }
         return 0;
     }
 
+    Payloads generatePayloads() {
+        return Payloads.generate(payloadSize, payloadCharset, payloadFrame, payloadContent, payloadCount, payloadSeed);
+    }
+
+    /**
+     * @param maxConnections
+     * @return the options of the client of each loop
+     */
+    WebSocketClientOptions clientOptions(int maxConnections) {
+        WebSocketClientOptions options = new WebSocketClientOptions()
+                .setMaxConnections(maxConnections)
+                .setLocalAddress(clientLocalAddress.orElse(null));
+        if (compression) {
+            options.setTryUsePerMessageCompression(true);
+            compressionLevel.ifPresent(options::setCompressionLevel);
+        }
+        if (tls) {
+            options.setVerifyHost(tlsTrustStore.isPresent());
+            tlsOptions(options);
+        }
+        return options;
+    }
+
+    /**
+     * @return the client used to call the auxiliary endpoints of the server, e.g. the metrics endpoint
+     */
+    ServerHttpClient serverHttpClient() {
+        HttpClientOptions options = new HttpClientOptions().setDefaultHost(serverHost).setDefaultPort(serverPort);
+        if (tls) {
+            options.setVerifyHost(tlsTrustStore.isPresent());
+            tlsOptions(options);
+        }
+        return new ServerHttpClient(vertx, options, timeout);
+    }
+
+    private void tlsOptions(ClientOptionsBase options) {
+        options.setSsl(true);
+        if (tlsTrustStore.isPresent()) {
+            options.setTrustOptions(new PfxOptions().setPath(tlsTrustStore.get()).setPassword(tlsTrustStorePassword));
+        } else {
+            options.setTrustAll(true);
+        }
+        options.setSslEngineOptions(useOpenSsl() ? new OpenSSLEngineOptions() : new JdkSSLEngineOptions());
+    }
+
+    boolean useOpenSsl() {
+        return "openssl".equals(tlsProvider) && OpenSSLEngineOptions.isAvailable();
+    }
+
+    /**
+     * @return the suffix of the default variant name, e.g. {@code -deflate} or {@code -tls-openssl}
+     */
+    String variantSuffix() {
+        return (compression ? "-deflate" : "") + (tls ? "-tls" : "") + (tls && useOpenSsl() ? "-openssl" : "");
+    }
+
+    /**
+     * @return the negotiated TLS protocol and cipher suite
+     */
+    JsonObject tlsSession(WebSocket ws) {
+        JsonObject json = new JsonObject().put("provider", useOpenSsl() ? "openssl" : "jdk");
+        SSLSession session = ws.sslSession();
+        if (session != null) {
+            json.put("protocol", session.getProtocol());
+            json.put("cipherSuite", session.getCipherSuite());
+        }
+        return json;
+    }
+
+    /**
+     * @return the value of the {@code Sec-WebSocket-Extensions} header of the handshake response or an empty string
+     */
+    static String negotiatedExtensions(WebSocket ws) {
+        String value = ws.headers() != null ? ws.headers().get("Sec-WebSocket-Extensions") : null;
+        return value != null ? value : "";
+    }
+
+    /**
+     * @param clientCpuTime the CPU time of the client event loops
+     * @param metrics the server metrics, may be {@code null}
+     * @param messages the number of messages received by the client
+     * @return the CPU time per message received by the client in microseconds
+     */
+    static JsonObject cpuPerMessage(long clientCpuTime, JsonObject metrics, long messages) {
+        JsonObject json = new JsonObject()
+                .put("unit", "us")
+                .put("client", messages > 0 ? LatencyStats.toMicros((double) clientCpuTime / messages) : 0.0);
+        if (metrics != null && metrics.getDouble("cpuTime", -1.0) >= 0 && messages > 0) {
+            // The CPU time of the whole server process in milliseconds
+            json.put("server", 1000.0 * metrics.getDouble("cpuTime") / messages);
+        }
+        return json;
+    }
+
+    WebSocketConnectOptions connectOptions() {
+        return connectOptions(serverPath);
+    }
+
+    WebSocketConnectOptions connectOptions(String path) {
+        return new WebSocketConnectOptions()
+                .setHost(serverHost)
+                .setPort(serverPort)
+                .setURI(path)
+                .setAllowOriginHeader(false);
+    }
+
+    /**
+     * @param connection the connection index
+     * @return the path of the generated endpoint used by the connection in the routes mode
+     */
+    String routePath(int connection) {
+        String path = "/routes/r" + (connection % routesCount);
+        return "param".equals(routesKind) ? path + "/rooms/" + connection : path;
+    }
+
+    /**
+     * @param message
+     * @return the send timestamp or {@link MessageTag#INVALID} if the reply does not match the sent payload
+     */
+    long validate(String message) {
+        long sent = MessageTag.timestamp(message);
+        Payload payload = payloads.get(MessageTag.payload(message));
+        if (sent == MessageTag.INVALID || payload == null
+                || !payload.matches(message, MessageTag.payloadStart(message))) {
+            Log.errorf("Received invalid message from the server: %s", message);
+            return MessageTag.INVALID;
+        }
+        return sent;
+    }
+
+    long validate(Buffer message) {
+        long sent = MessageTag.timestamp(message);
+        Payload payload = payloads.get(MessageTag.payload(message));
+        if (sent == MessageTag.INVALID || payload == null
+                || !payload.matches(message, MessageTag.payloadStart(message))) {
+            Log.errorf("Received invalid message from the server: %s", message);
+            return MessageTag.INVALID;
+        }
+        return sent;
+    }
+
+    /**
+     * @param recording the response of the server JFR endpoint
+     * @param messages the number of messages sent
+     * @return the JFR profile
+     */
+    JsonObject analyzeRecording(JsonObject recording, long messages) {
+        Path file = Path.of(recording.getString("file"));
+        try {
+            JsonObject jfr = JfrAnalyzer.analyze(file, messages);
+            Log.infof("JFR profile [allocated: %.1f B/msg, allocation rate: %.1f MB/s, GC pause p99: %.2f ms]",
+                    jfr.getDouble("bytesPerMessage", 0.0), jfr.getDouble("allocationRate") / (1024 * 1024),
+                    jfr.getJsonObject("gc").getDouble("p99"));
+            return jfr;
+        } catch (IOException e) {
+            Log.warnf("Unable to analyze the JFR recording %s: %s", file, e.toString());
+            return new JsonObject().put("file", file.toString());
+        }
+    }
+
+    /**
+     * Add the time series to the result. If {@code steady-state.trim} is set and the steady state was detected then the
+     * throughput and the latency are replaced with the steady state values.
+     */
+    void addTimeSeries(JsonObject result, JsonObject timeSeries) {
+        result.put("timeSeries", timeSeries);
+        JsonObject steadyState = timeSeries.getJsonObject("steadyState");
+        if (steadyState.getBoolean("detected")) {
+            Log.infof("Steady state detected after %s ms [throughput: %.0f msg/s, latency p99: %.1f us]",
+                    steadyState.getLong("start"), steadyState.getDouble("throughput"),
+                    steadyState.getJsonObject("latency").getDouble("p99"));
+            if (steadyStateTrim) {
+                result.put("fullRun", new JsonObject()
+                        .put("throughput", result.getValue("throughput"))
+                        .put("latency", result.getValue("latency")));
+                result.put("throughput", steadyState.getValue("throughput"));
+                result.put("latency", steadyState.getValue("latency"));
+            }
+        } else {
+            Log.infof("Steady state not detected [window: %s, tolerance: %s]", steadyStateWindow,
+                    steadyStateTolerance);
+        }
+    }
+
+    String timeSeriesFile(String variantName) {
+        return variantName.replace('/', '_') + workerIndex.map(i -> "-worker" + i).orElse("") + "-"
+                + System.currentTimeMillis() + ".jsonl";
+    }
+
+    /**
+     * @param greeting the version sent by the server
+     * @return the reported Quarkus version
+     */
+    String quarkusVersion(String greeting) {
+        return serverQuarkusVersion.orElse(greeting);
+    }
+
+    String serverType(JsonObject metrics) {
+        return serverType.orElse(metrics != null ? metrics.getString("server", "next") : "next");
+    }
+
+    /**
+     * The result is stored in {@code <quarkusVersion>-<server>-<variant>-<run>.json} where {@code run} is the next free
+     * index.
+     */
+    void writeResult(JsonObject result) throws IOException {
+        Log.infof("Result written to %s", writeResult(resultsDir, result));
+    }
+
+    static File writeResult(String resultsDir, JsonObject result) throws IOException {
+        File dir = new File(resultsDir);
+        Files.createDirectories(dir.toPath());
+        String prefix = result.getString("quarkusVersion") + "-" + result.getString("server") + "-"
+                + result.getString("variant").replace('/', '_');
+        int run = 1;
+        File file;
+        while ((file = new File(dir, prefix + "-" + run + ".json")).exists()) {
+            run++;
+        }
+        result.put("run", run);
+        Files.writeString(file.toPath(), result.toString());
+        return file;
+    }
+
+    /**
+     * Send one message from all senders of the given loop and then schedule the next round on the loop context.
+     */
+    private void sendRound(ClientLoop loop, int round,
+            Function<ClientConnection, Handler<AsyncResult<Void>>> sendCallback) {
+        for (ClientConnection connection : loop.senders) {
+            send(connection, System.nanoTime(), sendCallback.apply(connection));
+        }
+        int next = round + 1;
+        if (next < numberOfMessages) {
+            if (messageInterval.isPresent()) {
+                vertx.setTimer(messageInterval.get().toMillis(), id -> sendRound(loop, next, sendCallback));
+            } else {
+                loop.context.runOnContext(v -> sendRound(loop, next, sendCallback));
+            }
+        }
+    }
+
+    /**
+     * Open-loop mode - the messages are sent at a constant rate, regardless of the replies. The sends are driven by a
+     * periodic timer that catches up with all messages due since the start. The latency is measured from the intended
+     * send time so that any queueing delay is included.
+     */
+    private void sendAtRate(ClientLoop loop, double loopRate,
+            Function<ClientConnection, Handler<AsyncResult<Void>>> sendCallback) {
+        List<ClientConnection> connections = loop.senders;
+        long total = (long) connections.size() * numberOfMessages;
+        double interval = TimeUnit.SECONDS.toNanos(1) / loopRate;
+        long sendStart = System.nanoTime();
+        // The timer is fired on the loop context
+        long[] scheduled = new long[1];
+        vertx.setPeriodic(1, id -> {
+            long due = Math.min(total, (long) ((System.nanoTime() - sendStart) / interval) + 1);
+            for (long k = scheduled[0]; k < due; k++) {
+                ClientConnection connection = connections.get((int) (k % connections.size()));
+                send(connection, sendStart + (long) (k * interval), sendCallback.apply(connection));
+            }
+            scheduled[0] = due;
+            if (due == total) {
+                vertx.cancelTimer(id);
+            }
+        });
+    }
+
+    /**
+     * Pipelined mode - send messages until the max number of messages in flight is reached. If the write queue is full
+     * then wait until it's drained.
+     */
+    private void sendPipelined(ClientConnection connection,
+            Function<ClientConnection, Handler<AsyncResult<Void>>> sendCallback, LongAdder writeQueueFull) {
+        WebSocket ws = connection.ws;
+        while (connection.sent < numberOfMessages && connection.inFlight < maxInFlight.get()) {
+            if (ws.writeQueueFull()) {
+                writeQueueFull.increment();
+                ws.drainHandler(v -> {
+                    ws.drainHandler(null);
+                    sendPipelined(connection, sendCallback, writeQueueFull);
+                });
+                return;
+            }
+            connection.inFlight++;
+            send(connection, System.nanoTime(), sendCallback.apply(connection));
+        }
+    }
+
+    /**
+     * Send a random pre-generated payload tagged with the given timestamp.
+     */
+    private void send(ClientConnection connection, long timestamp, Handler<AsyncResult<Void>> callback) {
+        Payload payload = payloads.next();
+        long id = connection.firstId + connection.sent++;
+        if (payloads.isBinary()) {
+            connection.ws.writeBinaryMessage(MessageTag.binaryTag(timestamp, id, payload), callback);
+        } else {
+            connection.ws.writeTextMessage(MessageTag.tag(timestamp, id, payload), callback);
+        }
+    }
+
+    @FunctionalInterface
+    interface ReplyHandler {
+
+        /**
+         * @param connection
+         * @param sent the send timestamp or {@link MessageTag#INVALID} if the reply is not valid
+         * @param id the message id or {@code -1} if not needed
+         */
+        void reply(ClientConnection connection, long sent, long id);
+
+    }
+
 }
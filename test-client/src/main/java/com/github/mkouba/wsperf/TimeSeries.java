@@ -0,0 +1,243 @@
+package com.github.mkouba.wsperf;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Per-interval statistics of the measurement phase, i.e. the number of messages sent and received, the errors, the
+ * messages in flight and the latency percentiles of each interval. The intervals are appended to a JSONL file while the
+ * test is running and added to the result as {@code timeSeries}.
+ * <p>
+ * The steady state starts with the first window of {@code steady-state.window} intervals where the coefficient of
+ * variation of both the receive rate and the median latency is within {@code steady-state.tolerance}.
+ */
+public class TimeSeries {
+
+    private final Recorder recorder = new Recorder(LatencyStats.SIGNIFICANT_DIGITS);
+
+    final LongAdder sent = new LongAdder();
+
+    final LongAdder received = new LongAdder();
+
+    final LongAdder errors = new LongAdder();
+
+    // The number of replies expected for each message sent
+    private final int fanOut;
+
+    private final long interval;
+
+    private final Path file;
+
+    // Only accessed from the sampler thread until stopped
+    private final JsonArray intervals = new JsonArray();
+    private BufferedWriter writer;
+    private long start;
+    private long last;
+    private long lastSent;
+    private long lastReceived;
+    private long lastErrors;
+
+    private ScheduledExecutorService sampler;
+
+    TimeSeries(long intervalMillis, Path file, int fanOut) {
+        this.interval = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.file = file;
+        this.fanOut = fanOut;
+    }
+
+    void record(long latencyNanos) {
+        recorder.recordValue(latencyNanos);
+    }
+
+    void start() throws IOException {
+        Files.createDirectories(file.getParent());
+        writer = Files.newBufferedWriter(file);
+        start = System.nanoTime();
+        last = start;
+        recorder.reset();
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "time-series");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the sampling; the last interval may be shorter.
+     */
+    void stop() throws InterruptedException {
+        sampler.shutdown();
+        if (!sampler.awaitTermination(interval, TimeUnit.NANOSECONDS)) {
+            Log.warn("Time series sampler not stopped in time");
+        }
+        sample();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.warnf("Unable to close %s: %s", file, e.toString());
+        }
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        long duration = now - last;
+        if (duration <= 0) {
+            return;
+        }
+        Histogram histogram = recorder.getIntervalHistogram();
+        long sentTotal = sent.sum();
+        long receivedTotal = received.sum();
+        long errorsTotal = errors.sum();
+        JsonObject point = point(TimeUnit.NANOSECONDS.toMillis(now - start), duration, sentTotal - lastSent,
+                receivedTotal - lastReceived, errorsTotal - lastErrors, sentTotal * fanOut - receivedTotal, histogram);
+        last = now;
+        lastSent = sentTotal;
+        lastReceived = receivedTotal;
+        lastErrors = errorsTotal;
+        intervals.add(point);
+        Log.infof("%6.1f s [sent: %.0f msg/s, received: %.0f msg/s, in flight: %s, errors: %s, p50: %.1f us, "
+                + "p99: %.1f us]", point.getLong("time") / 1000.0, point.getDouble("sendRate"),
+                point.getDouble("receiveRate"), point.getLong("inFlight"), point.getLong("errors"),
+                LatencyStats.toMicros(histogram.getValueAtPercentile(50.0)),
+                LatencyStats.toMicros(histogram.getValueAtPercentile(99.0)));
+        try {
+            writer.write(point.encode());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            Log.warnf("Unable to write %s: %s", file, e.toString());
+        }
+    }
+
+    /**
+     * @return the time series with the steady state
+     */
+    JsonObject toJson(int window, double tolerance) {
+        return toJson(intervals, window, tolerance).put("interval", TimeUnit.NANOSECONDS.toMillis(interval))
+                .put("file", file.toString());
+    }
+
+    static JsonObject toJson(JsonArray intervals, int window, double tolerance) {
+        return new JsonObject()
+                .put("intervals", intervals)
+                .put("steadyState", steadyState(intervals, window, tolerance));
+    }
+
+    static JsonObject point(long time, long durationNanos, long sent, long received, long errors, long inFlight,
+            Histogram histogram) {
+        double seconds = (double) durationNanos / TimeUnit.SECONDS.toNanos(1);
+        return new JsonObject()
+                .put("time", time)
+                .put("duration", TimeUnit.NANOSECONDS.toMillis(durationNanos))
+                .put("sent", sent)
+                .put("received", received)
+                .put("errors", errors)
+                .put("inFlight", inFlight)
+                .put("sendRate", sent / seconds)
+                .put("receiveRate", received / seconds)
+                .put("latency", LatencyStats.toJson(histogram));
+    }
+
+    /**
+     * Merge the time series of several workers; the workers start sending at the same time so the intervals are merged by
+     * index.
+     */
+    static JsonArray merge(List<JsonArray> series) {
+        int length = series.stream().mapToInt(JsonArray::size).max().orElse(0);
+        JsonArray merged = new JsonArray();
+        for (int i = 0; i < length; i++) {
+            long time = 0;
+            long duration = 0;
+            long sent = 0;
+            long received = 0;
+            long errors = 0;
+            long inFlight = 0;
+            Histogram histogram = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+            for (JsonArray intervals : series) {
+                if (i >= intervals.size()) {
+                    continue;
+                }
+                JsonObject point = intervals.getJsonObject(i);
+                time = Math.max(time, point.getLong("time"));
+                duration = Math.max(duration, point.getLong("duration"));
+                sent += point.getLong("sent");
+                received += point.getLong("received");
+                errors += point.getLong("errors");
+                inFlight += point.getLong("inFlight");
+                histogram.add(LatencyStats.decode(point.getJsonObject("latency").getString("histogram")));
+            }
+            merged.add(point(time, TimeUnit.MILLISECONDS.toNanos(Math.max(1, duration)), sent, received, errors,
+                    inFlight, histogram));
+        }
+        return merged;
+    }
+
+    /**
+     * The last interval is usually shorter and only contains the replies to the messages sent before; it's never used to
+     * detect the steady state but it's included in the measurement.
+     *
+     * @return the steady state; the throughput is the number of messages received per second
+     */
+    static JsonObject steadyState(JsonArray intervals, int window, double tolerance) {
+        JsonObject json = new JsonObject()
+                .put("window", window)
+                .put("tolerance", tolerance);
+        int first = -1;
+        for (int i = 0; i + window < intervals.size(); i++) {
+            double[] rates = new double[window];
+            double[] medians = new double[window];
+            for (int j = 0; j < window; j++) {
+                JsonObject point = intervals.getJsonObject(i + j);
+                rates[j] = point.getDouble("receiveRate");
+                medians[j] = point.getJsonObject("latency").getDouble("p50");
+            }
+            if (variation(rates) <= tolerance && variation(medians) <= tolerance) {
+                first = i;
+                break;
+            }
+        }
+        json.put("detected", first >= 0);
+        if (first < 0) {
+            return json;
+        }
+        Histogram histogram = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        long received = 0;
+        long duration = 0;
+        for (int i = first; i < intervals.size(); i++) {
+            JsonObject point = intervals.getJsonObject(i);
+            received += point.getLong("received");
+            duration += point.getLong("duration");
+            histogram.add(LatencyStats.decode(point.getJsonObject("latency").getString("histogram")));
+        }
+        JsonObject firstPoint = intervals.getJsonObject(first);
+        json.put("start", firstPoint.getLong("time") - firstPoint.getLong("duration"));
+        json.put("intervals", intervals.size() - first);
+        json.put("throughput", duration > 0 ? 1000.0 * received / duration : 0.0);
+        json.put("latency", LatencyStats.toJson(histogram));
+        return json;
+    }
+
+    /**
+     * @return the coefficient of variation
+     */
+    static double variation(double[] values) {
+        double mean = Statistics.mean(values);
+        return mean > 0 ? Statistics.stddev(values) / mean : Double.POSITIVE_INFINITY;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.github.mkouba.wsperf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The bytes transferred on a network interface, i.e. including the WebSocket framing and the TCP/IP headers. The
+ * counters are read from {@code /proc/net/dev} (Linux only) and include all traffic of the interface.
+ * <p>
+ * Each packet on the loopback interface is counted both as transmitted and received, therefore only the transmitted
+ * bytes are used for {@code lo}.
+ */
+public final class WireBytes {
+
+    static final Path PROC_NET_DEV = Path.of("/proc/net/dev");
+
+    static final String LOOPBACK = "lo";
+
+    private WireBytes() {
+    }
+
+    /**
+     * @param networkInterface
+     * @return the total number of bytes or {@code -1} if not available
+     */
+    static long read(String networkInterface) {
+        if (!Files.isReadable(PROC_NET_DEV)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_NET_DEV)) {
+                // lo: <rx bytes> <rx packets> <errs> <drop> <fifo> <frame> <compressed> <multicast> <tx bytes> ...
+                int idx = line.indexOf(':');
+                if (idx == -1 || !line.substring(0, idx).trim().equals(networkInterface)) {
+                    continue;
+                }
+                String[] columns = line.substring(idx + 1).trim().split("\\s+");
+                long rx = Long.parseLong(columns[0]);
+                long tx = Long.parseLong(columns[8]);
+                return networkInterface.equals(LOOPBACK) ? tx : rx + tx;
+            }
+            Log.warnf("Network interface %s not found in %s", networkInterface, PROC_NET_DEV);
+        } catch (IOException | RuntimeException e) {
+            Log.debugf(e, "Unable to read %s", PROC_NET_DEV);
+        }
+        return -1;
+    }
+
+    /**
+     * @param networkInterface
+     * @param start
+     * @param end
+     * @param messages
+     * @return the bytes transferred per message or {@code null} if not available
+     */
+    static JsonObject toJson(String networkInterface, long start, long end, long messages) {
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        return new JsonObject()
+                .put("interface", networkInterface)
+                .put("bytes", end - start)
+                .put("bytesPerMessage", messages > 0 ? (double) (end - start) / messages : 0.0);
+    }
+
+}
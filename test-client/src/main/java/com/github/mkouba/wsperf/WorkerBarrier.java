@@ -0,0 +1,100 @@
+package com.github.mkouba.wsperf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A connection between a worker and the coordinator used for the start barrier and the result. The protocol is
+ * line-based:
+ * <ol>
+ * <li>the worker sends {@code READY <index>} when all its clients are connected,</li>
+ * <li>the coordinator sends {@code GO} when all workers are ready,</li>
+ * <li>the worker sends the result JSON on a single line when finished.</li>
+ * </ol>
+ *
+ * @see Coordinator
+ */
+public class WorkerBarrier implements AutoCloseable {
+
+    static final String READY = "READY";
+    static final String GO = "GO";
+
+    private final Socket socket;
+
+    private final BufferedReader reader;
+
+    private final PrintWriter writer;
+
+    WorkerBarrier(Socket socket) throws IOException {
+        this.socket = socket;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    }
+
+    static WorkerBarrier connect(String host, int port) throws IOException {
+        return new WorkerBarrier(new Socket(host, port));
+    }
+
+    /**
+     * Blocks until the coordinator sends {@code GO}.
+     */
+    void await(int index, long timeout) throws IOException {
+        writer.println(READY + " " + index);
+        socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(timeout));
+        try {
+            String line = reader.readLine();
+            if (!GO.equals(line)) {
+                throw new IllegalStateException("Unexpected message from the coordinator: " + line);
+            }
+        } catch (SocketTimeoutException e) {
+            throw new IllegalStateException("Coordinator did not start the run in " + timeout + "s", e);
+        }
+    }
+
+    void complete(JsonObject result) {
+        writer.println(result.encode());
+    }
+
+    // Coordinator side
+
+    /**
+     * @return the index of the worker
+     */
+    int ready() throws IOException {
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(READY + " ")) {
+            throw new IllegalStateException("Unexpected message from a worker: " + line);
+        }
+        return Integer.parseInt(line.substring(READY.length() + 1));
+    }
+
+    void go() {
+        writer.println(GO);
+    }
+
+    /**
+     * Blocks until the worker sends the result. There is no timeout; if the worker process exits then the socket is
+     * closed.
+     *
+     * @return the result or {@code null} if the worker failed
+     */
+    JsonObject result() throws IOException {
+        socket.setSoTimeout(0);
+        String line = reader.readLine();
+        return line != null ? new JsonObject(line) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.github.mkouba.wsperf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import com.github.mkouba.wsperf.Coordinator.Worker;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class CoordinatorTest {
+
+    @Test
+    public void testMerge() {
+        TestClient client = new TestClient();
+        client.numberOfClients = 3;
+        client.numberOfMessages = 500;
+        client.serverType = Optional.empty();
+        client.targetRate = Optional.of(300);
+        client.maxInFlight = Optional.empty();
+        client.timeSeriesInterval = Duration.ofSeconds(1);
+        client.steadyStateWindow = 3;
+        client.steadyStateTolerance = 0.1;
+
+        Worker worker0 = new Worker(0, 0, 2, null);
+        worker0.result = result(1000, 2000, 200, 1_000_000, 600_000, 100, 150);
+        Worker worker1 = new Worker(1, 2, 1, "127.0.0.2");
+        worker1.result = result(900, 2500, 100, 3_000_000, 550_000, 50);
+        JsonObject metrics = new JsonObject().put("server", "legacy").put("cpuTime", 950.0);
+
+        JsonObject merged = new Coordinator(client).merge(List.of(worker0, worker1), 3000, metrics);
+
+        // All fields of a single-process result are carried over
+        Set<String> missing = new HashSet<>(worker0.result.fieldNames());
+        missing.removeAll(merged.fieldNames());
+        assertTrue(missing.isEmpty(), "Missing fields: " + missing);
+        assertEquals(metrics, merged.getJsonObject("serverMetrics"));
+        assertEquals("legacy", merged.getString("server"));
+        assertEquals(3000, merged.getLong("timeTaken"));
+        assertEquals(3, merged.getInteger("numberOfClients"));
+        assertEquals(600, merged.getLong("targetRate"));
+
+        // The throughput is the sum of the actual deliveries divided by the longest send time
+        assertEquals(1900, merged.getLong("deliveries"));
+        assertEquals(2500, merged.getLong("sendTime"));
+        assertEquals(1900 * 1000.0 / 2500, merged.getDouble("throughput"), 0.001);
+
+        JsonObject latency = merged.getJsonObject("latency");
+        assertEquals(300, latency.getLong("count"));
+        assertEquals(1000.0, latency.getDouble("min"), 1.0);
+        assertEquals(3000.0, latency.getDouble("max"), 3.0);
+
+        // The CPU time of all event loops of all workers
+        assertEquals(3, merged.getJsonArray("eventLoops").size());
+        JsonObject cpuPerMessage = merged.getJsonObject("cpuPerMessage");
+        assertEquals(300_000.0 / 1900, cpuPerMessage.getDouble("client"), 0.001);
+        assertEquals(1000.0 * 950 / 1900, cpuPerMessage.getDouble("server"), 0.001);
+
+        // The workers share the network interface
+        JsonObject wire = merged.getJsonObject("wire");
+        assertEquals(600_000, wire.getLong("bytes"));
+        assertEquals(600_000.0 / 1900, wire.getDouble("bytesPerMessage"), 0.001);
+
+        assertEquals(worker0.result.getJsonObject("compression"), merged.getJsonObject("compression"));
+        assertEquals(worker0.result.getJsonObject("tls"), merged.getJsonObject("tls"));
+        assertEquals(worker0.result.getJsonObject("payload"), merged.getJsonObject("payload"));
+
+        JsonArray workers = merged.getJsonArray("workers");
+        assertEquals(2, workers.size());
+        assertEquals("0-1", workers.getJsonObject(0).getString("clients"));
+        assertEquals("2-2", workers.getJsonObject(1).getString("clients"));
+        assertEquals("127.0.0.2", workers.getJsonObject(1).getString("localAddress"));
+        assertEquals(900, workers.getJsonObject(1).getLong("deliveries"));
+
+        JsonArray intervals = merged.getJsonObject("timeSeries").getJsonArray("intervals");
+        assertEquals(1, intervals.size());
+        assertEquals(1900, intervals.getJsonObject(0).getLong("received"));
+    }
+
+    /**
+     * A single-process result with the given latency and the CPU time of each event loop in milliseconds.
+     */
+    static JsonObject result(long deliveries, long sendTime, long count, long latencyNanos, long wireBytes,
+            long... cpuTimes) {
+        Histogram histogram = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        histogram.recordValueWithCount(latencyNanos, count);
+        JsonArray eventLoops = new JsonArray();
+        for (int i = 0; i < cpuTimes.length; i++) {
+            eventLoops.add(new JsonObject().put("thread", "loop-" + i).put("connections", 1)
+                    .put("cpuTime", cpuTimes[i]).put("utilization", 0.5));
+        }
+        JsonArray intervals = new JsonArray().add(TimeSeries.point(sendTime, sendTime * 1_000_000, deliveries,
+                deliveries, 0, 0, histogram));
+        return new JsonObject()
+                .put("timestamp", "2026-01-01T00:00:00")
+                .put("timeTaken", sendTime + 500)
+                .put("quarkusVersion", "3.28.4")
+                .put("server", "next")
+                .put("variant", "to-lower-case")
+                .put("numberOfClients", 1)
+                .put("numberOfMessages", 500)
+                .put("sendTime", sendTime)
+                .put("throughput", 1000.0 * deliveries / sendTime)
+                .put("deliveries", deliveries)
+                .put("targetRate", 300)
+                .put("payload", new JsonObject().put("size", "FOO"))
+                .put("compression", new JsonObject().put("level", 6).put("extensions", "permessage-deflate"))
+                .put("tls", new JsonObject().put("protocol", "TLSv1.3"))
+                .put("wire", WireBytes.toJson("lo", 0, wireBytes, deliveries))
+                .put("latency", LatencyStats.toJson(histogram))
+                .put("eventLoops", eventLoops)
+                .put("cpuPerMessage", TestClient.cpuPerMessage(0, null, deliveries))
+                .put("timeSeries", new JsonObject().put("intervals", intervals).put("file", "worker.jsonl"));
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.github.mkouba.wsperf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.json.JsonObject;
+
+public class GatlingResultsTest {
+
+    static final File RUNS = new File("src/test/resources/gatling");
+
+    @Test
+    public void testConvert() throws IOException {
+        File run = new File(RUNS, "echo");
+        assertTrue(GatlingResults.isRun(run));
+        JsonObject result = GatlingResults.convert(run, Map.of());
+        assertEquals("3.28.4", result.getString("quarkusVersion"));
+        assertEquals("next-gatling", result.getString("server"));
+        assertEquals("to-lower-case", result.getString("variant"));
+        assertEquals("gatling", result.getString("generator"));
+        assertEquals(2, result.getInteger("numberOfClients"));
+        assertEquals(2, result.getInteger("numberOfMessages"));
+        assertEquals(3000, result.getLong("timeTaken"));
+        // From the first send to the last reply of the successful checks
+        assertEquals(101, result.getLong("sendTime"));
+        assertEquals(3 * 1000.0 / 101, result.getDouble("throughput"), 0.001);
+        assertFalse(result.containsKey("maxInFlight"));
+        assertFalse(result.containsKey("broadcast"));
+        JsonObject latency = result.getJsonObject("latency");
+        assertEquals(3, latency.getLong("count"));
+        assertEquals("ms", latency.getString("resolution"));
+        assertEquals(1000.0, latency.getDouble("min"), 1.0);
+        assertEquals(5000.0, latency.getDouble("max"), 5.0);
+        assertEquals(1, result.getJsonObject("gatling").getLong("ko"));
+        assertEquals("echo", result.getJsonObject("gatling").getString("run"));
+    }
+
+    @Test
+    public void testConvertBroadcast() throws IOException {
+        JsonObject result = GatlingResults.convert(new File(RUNS, "broadcast"), Map.of("server", "legacy"));
+        assertEquals("3.15.1", result.getString("quarkusVersion"));
+        assertEquals("legacy-gatling", result.getString("server"));
+        assertEquals("broadcast-tls", result.getString("variant"));
+        assertEquals("broadcast", result.getString("mode"));
+        assertEquals(10.0, result.getDouble("targetRate"), 0.001);
+        // The last reply is the end of the last successful Receive group
+        assertEquals(300, result.getLong("sendTime"));
+        JsonObject broadcast = result.getJsonObject("broadcast");
+        assertEquals(1, broadcast.getInteger("publishers"));
+        assertEquals(3, broadcast.getInteger("subscribers"));
+        assertEquals(1, broadcast.getInteger("failedSubscribers"));
+        assertEquals(2, broadcast.getLong("messages"));
+        // Each message is delivered to the publisher and the successful subscribers
+        assertEquals(6, broadcast.getLong("deliveries"));
+        assertEquals(6 * 1000.0 / 300, result.getDouble("throughput"), 0.001);
+    }
+
+    @Test
+    public void testConvertQuarkusVersionOverride() throws IOException {
+        JsonObject result = GatlingResults.convert(new File(RUNS, "echo"), Map.of("quarkus-version", "999-SNAPSHOT"));
+        assertEquals("999-SNAPSHOT", result.getString("quarkusVersion"));
+        assertThrows(IOException.class, () -> GatlingResults.convert(new File(RUNS, "missing"), Map.of()));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.mkouba.wsperf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.buffer.Buffer;
+
+public class MessageTagTest {
+
+    @Test
+    public void testTextRoundTrip() {
+        Payload payload = new Payload(7, "Hello ŘEŽ 😀");
+        for (long timestamp : new long[] { 0, 1, 123456789012345L, -987654321L, Long.MAX_VALUE, Long.MIN_VALUE + 1 }) {
+            String message = MessageTag.tag(timestamp, 42, payload);
+            assertEquals(timestamp + ":7:42:" + payload.text, message);
+            assertEquals(timestamp, MessageTag.timestamp(message));
+            assertEquals(7, MessageTag.payload(message));
+            assertEquals(42, MessageTag.id(message));
+            int start = MessageTag.payloadStart(message);
+            assertEquals(payload.text, message.substring(start));
+            assertTrue(payload.matches(message.substring(0, start) + payload.text.toLowerCase(), start));
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        Payload payload = new Payload(3, "Hello ŘEŽ 😀");
+        for (long timestamp : new long[] { 0, 9, 123456789012345L, -987654321L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+            Buffer message = MessageTag.binaryTag(timestamp, 1_000_000_000_000L, payload);
+            assertEquals(Buffer.buffer(timestamp + ":3:1000000000000:").appendBuffer(payload.binary), message);
+            assertEquals(3, MessageTag.payload(message));
+            assertEquals(1_000_000_000_000L, MessageTag.id(message));
+            int start = MessageTag.payloadStart(message);
+            assertEquals(payload.binary, message.getBuffer(start, message.length()));
+            if (timestamp != Long.MIN_VALUE) {
+                // Long.MIN_VALUE is reserved for invalid messages
+                assertEquals(timestamp, MessageTag.timestamp(message));
+            }
+        }
+        // The scratch buffer is reused, i.e. a shorter tag must not contain the leftovers of the previous one
+        Buffer message = MessageTag.binaryTag(1, 0, payload);
+        assertEquals(Buffer.buffer("1:3:0:").appendBuffer(payload.binary), message);
+    }
+
+    @Test
+    public void testInvalid() {
+        assertEquals(MessageTag.INVALID, MessageTag.timestamp("foo"));
+        assertEquals(MessageTag.INVALID, MessageTag.timestamp(":1:2:foo"));
+        assertEquals(-1, MessageTag.payload("123:foo"));
+        assertEquals(-1, MessageTag.id("123:1:foo"));
+        assertEquals(MessageTag.INVALID, MessageTag.timestamp(Buffer.buffer("foo")));
+        assertEquals(MessageTag.INVALID, MessageTag.timestamp(Buffer.buffer("12a:1:2:foo")));
+        assertEquals(-1, MessageTag.payload(Buffer.buffer("123:x:2:foo")));
+        assertEquals(-1, MessageTag.id(Buffer.buffer("123:1:foo")));
+    }
+
+}
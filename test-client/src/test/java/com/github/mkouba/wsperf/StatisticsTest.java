@@ -0,0 +1,46 @@
+package com.github.mkouba.wsperf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class StatisticsTest {
+
+    @Test
+    public void testMannWhitneyExact() {
+        // n1 = n2 = 5 has C(10,5) = 252 arrangements; the critical value of U for the two-sided 5% level is 2
+        double[] a = { 1, 2, 3, 4, 5 };
+        assertEquals(2.0 / 252, Statistics.mannWhitney(a, new double[] { 6, 7, 8, 9, 10 }), 1e-9);
+        // U = 2: P(U <= 2) = (1 + 1 + 2) / 252
+        assertEquals(8.0 / 252, Statistics.mannWhitney(new double[] { 1, 2, 3, 4, 7 },
+                new double[] { 5, 6, 8, 9, 10 }), 1e-9);
+        // U = 3: P(U <= 3) = (1 + 1 + 2 + 3) / 252, i.e. not significant
+        assertEquals(14.0 / 252, Statistics.mannWhitney(new double[] { 1, 2, 3, 4, 8 },
+                new double[] { 5, 6, 7, 9, 10 }), 1e-9);
+    }
+
+    @Test
+    public void testMannWhitneySymmetric() {
+        double[] a = { 10.5, 11.2, 9.8, 10.1 };
+        double[] b = { 12.3, 11.9, 12.8, 11.1, 13.0 };
+        assertEquals(Statistics.mannWhitney(a, b), Statistics.mannWhitney(b, a), 1e-12);
+        // Interleaved samples
+        assertEquals(1.0, Statistics.mannWhitney(new double[] { 1, 4, 5, 8 }, new double[] { 2, 3, 6, 7 }), 1e-9);
+    }
+
+    @Test
+    public void testMannWhitneyTies() {
+        // U = 1.5 with ties; the normal approximation with the tie and continuity correction, i.e. the p-value of
+        // R's wilcox.test(a, b, exact = FALSE, correct = TRUE)
+        assertEquals(0.02686, Statistics.mannWhitney(new double[] { 1, 2, 2, 3, 4 }, new double[] { 3, 5, 5, 6, 7 }),
+                1e-4);
+        // All values equal
+        assertEquals(1.0, Statistics.mannWhitney(new double[] { 1, 1, 1 }, new double[] { 1, 1, 1 }), 1e-9);
+    }
+
+    @Test
+    public void testMannWhitneyEmpty() {
+        assertEquals(Double.NaN, Statistics.mannWhitney(new double[0], new double[] { 1 }));
+    }
+
+}
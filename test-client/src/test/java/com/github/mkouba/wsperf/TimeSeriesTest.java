@@ -0,0 +1,81 @@
+package com.github.mkouba.wsperf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class TimeSeriesTest {
+
+    @Test
+    public void testSteadyState() {
+        JsonArray intervals = new JsonArray();
+        // Warm-up: low rate and high latency
+        intervals.add(point(1000, 100, 10_000_000));
+        intervals.add(point(2000, 300, 5_000_000));
+        for (int i = 3; i <= 8; i++) {
+            intervals.add(point(i * 1000, 1000, 1_000_000));
+        }
+        JsonObject steadyState = TimeSeries.steadyState(intervals, 3, 0.1);
+        assertTrue(steadyState.getBoolean("detected"));
+        assertEquals(2000, steadyState.getLong("start"));
+        assertEquals(6, steadyState.getInteger("intervals"));
+        assertEquals(1000.0, steadyState.getDouble("throughput"), 0.001);
+        assertEquals(6000, steadyState.getJsonObject("latency").getLong("count"));
+        assertEquals(1000.0, steadyState.getJsonObject("latency").getDouble("p50"), 1.0);
+    }
+
+    @Test
+    public void testSteadyStateNotDetected() {
+        JsonArray intervals = new JsonArray();
+        for (int i = 1; i <= 8; i++) {
+            intervals.add(point(i * 1000, i % 2 == 0 ? 1000 : 500, 1_000_000));
+        }
+        JsonObject steadyState = TimeSeries.steadyState(intervals, 3, 0.1);
+        assertFalse(steadyState.getBoolean("detected"));
+        assertFalse(steadyState.containsKey("throughput"));
+        // The last interval is never used to detect the steady state
+        intervals = new JsonArray().add(point(1000, 1000, 1_000_000)).add(point(2000, 1000, 1_000_000));
+        assertFalse(TimeSeries.steadyState(intervals, 2, 0.1).getBoolean("detected"));
+    }
+
+    @Test
+    public void testMerge() {
+        JsonArray worker1 = new JsonArray().add(point(1000, 100, 1_000_000)).add(point(2000, 200, 1_000_000));
+        JsonArray worker2 = new JsonArray().add(point(1001, 300, 2_000_000)).add(point(2002, 400, 2_000_000))
+                .add(point(2500, 50, 3_000_000));
+        JsonArray merged = TimeSeries.merge(List.of(worker1, worker2));
+        assertEquals(3, merged.size());
+        JsonObject first = merged.getJsonObject(0);
+        assertEquals(1001, first.getLong("time"));
+        assertEquals(400, first.getLong("sent"));
+        assertEquals(400, first.getLong("received"));
+        assertEquals(400.0, first.getDouble("receiveRate"), 0.001);
+        assertEquals(400, first.getJsonObject("latency").getLong("count"));
+        assertEquals(2000.0, first.getJsonObject("latency").getDouble("max"), 2.0);
+        assertEquals(600, merged.getJsonObject(1).getLong("received"));
+        // Only the second worker has the third interval
+        JsonObject last = merged.getJsonObject(2);
+        assertEquals(2500, last.getLong("time"));
+        assertEquals(50, last.getLong("received"));
+        assertEquals(3000.0, last.getJsonObject("latency").getDouble("p50"), 3.0);
+    }
+
+    /**
+     * A one second interval where all messages sent were received with the given latency.
+     */
+    static JsonObject point(long time, long received, long latencyNanos) {
+        Histogram histogram = new Histogram(LatencyStats.SIGNIFICANT_DIGITS);
+        histogram.recordValueWithCount(latencyNanos, received);
+        return TimeSeries.point(time, TimeUnit.SECONDS.toNanos(1), received, received, 0, 0, histogram);
+    }
+
+}
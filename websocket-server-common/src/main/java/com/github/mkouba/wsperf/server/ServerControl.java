@@ -0,0 +1,84 @@
+package com.github.mkouba.wsperf.server;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Application;
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Lifecycle control of the server, i.e. the orchestrator does not need to poll the process list or wait for an idle
+ * timeout.
+ * <ul>
+ * <li>{@code GET /wsperf/ready} returns {@code 200} and the status once the application is started, {@code 503}
+ * otherwise</li>
+ * <li>{@code POST /wsperf/warmup} marks the warm-up phase as complete</li>
+ * <li>{@code POST /wsperf/shutdown} stops the server after the response is sent</li>
+ * </ul>
+ * The status includes the total JIT compilation time, i.e. the orchestrator repeats the warm-up until the compilation
+ * settles.
+ */
+@Singleton
+public class ServerControl {
+
+    static final String PATH = "/wsperf";
+
+    @Inject
+    ServerInfo info;
+
+    // The JVM uptime when the application was started, in milliseconds
+    private volatile long startedAt = -1;
+
+    // The JVM uptime when the warm-up was completed, in milliseconds
+    private volatile long warmedUpAt = -1;
+
+    void onStart(@Observes StartupEvent event) {
+        startedAt = ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    void registerRoutes(@Observes Router router) {
+        router.get(PATH + "/ready").handler(rc -> rc.response()
+                .setStatusCode(startedAt < 0 ? 503 : 200)
+                .putHeader("Content-Type", "application/json")
+                .end(status().encode()));
+        router.post(PATH + "/warmup").handler(rc -> {
+            warmedUpAt = ManagementFactory.getRuntimeMXBean().getUptime();
+            Log.infof("Warm-up completed [uptime: %s ms, compilation time: %s ms]", warmedUpAt, compilationTime());
+            rc.response().setStatusCode(204).end();
+        });
+        router.post(PATH + "/shutdown").handler(rc -> {
+            Log.infof("Shutdown requested");
+            rc.response().setStatusCode(202).end().onComplete(r -> Quarkus.asyncExit());
+        });
+    }
+
+    JsonObject status() {
+        return new JsonObject()
+                .put("server", info.type())
+                .put("quarkusVersion", Application.class.getPackage().getImplementationVersion())
+                .put("javaVersion", Runtime.version().feature())
+                .put("uptime", ManagementFactory.getRuntimeMXBean().getUptime())
+                .put("startedAt", startedAt)
+                .put("warm", warmedUpAt >= 0)
+                .put("warmedUpAt", warmedUpAt)
+                .put("openConnections", info.openConnections())
+                .put("compilationTime", compilationTime())
+                .put("loadedClasses", ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+    }
+
+    /**
+     * @return the total JIT compilation time in milliseconds or {@code -1} if not available, e.g. in a native image
+     */
+    static long compilationTime() {
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        return jit != null && jit.isCompilationTimeMonitoringSupported() ? jit.getTotalCompilationTime() : -1;
+    }
+
+}
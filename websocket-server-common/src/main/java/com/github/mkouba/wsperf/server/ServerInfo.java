@@ -0,0 +1,18 @@
+package com.github.mkouba.wsperf.server;
+
+/**
+ * The server-specific part of the shared endpoints, i.e. each server implementation provides exactly one bean.
+ */
+public interface ServerInfo {
+
+    /**
+     * @return the server type reported in the results, e.g. {@code next}
+     */
+    String type();
+
+    /**
+     * @return the number of open WebSocket connections
+     */
+    int openConnections();
+
+}
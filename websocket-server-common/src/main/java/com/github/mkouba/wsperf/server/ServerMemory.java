@@ -0,0 +1,90 @@
+package com.github.mkouba.wsperf.server;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.quarkus.logging.Log;
+import io.vertx.core.buffer.impl.VertxByteBufAllocator;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Memory footprint of the server, i.e. the heap, the resident set size and the direct buffers.
+ * <p>
+ * The snapshot is available at {@code GET /wsperf/memory}; {@code GET /wsperf/memory?gc=true} triggers a full GC first
+ * so that the heap usage only includes reachable objects.
+ */
+@Singleton
+public class ServerMemory {
+
+    static final String PATH = "/wsperf/memory";
+
+    static final Path PROC_SELF_STATUS = Path.of("/proc/self/status");
+
+    @Inject
+    ServerInfo info;
+
+    void registerRoutes(@Observes Router router) {
+        router.get(PATH).blockingHandler(rc -> {
+            if (Boolean.parseBoolean(rc.request().getParam("gc"))) {
+                System.gc();
+            }
+            rc.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(snapshot().encode());
+        });
+    }
+
+    JsonObject snapshot() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        JsonObject json = new JsonObject()
+                .put("server", info.type())
+                .put("openConnections", info.openConnections())
+                .put("heapUsed", heap.getUsed())
+                .put("heapCommitted", heap.getCommitted())
+                .put("nonHeapUsed", nonHeap.getUsed())
+                .put("rss", rss());
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct") || pool.getName().equals("mapped")) {
+                json.put(pool.getName() + "Buffers", pool.getMemoryUsed());
+            }
+        }
+        // The direct memory used by the Netty pool of Vert.x; the pool chunks are also included in "directBuffers"
+        json.put("nettyDirect",
+                VertxByteBufAllocator.POOLED_ALLOCATOR instanceof ByteBufAllocatorMetricProvider provider
+                        ? provider.metric().usedDirectMemory()
+                        : -1);
+        return json;
+    }
+
+    /**
+     * @return the resident set size in bytes or {@code -1} if not available (Linux only)
+     */
+    static long rss() {
+        if (!Files.isReadable(PROC_SELF_STATUS)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_SELF_STATUS)) {
+                // VmRSS:	  123456 kB
+                if (line.startsWith("VmRSS:")) {
+                    String[] parts = line.substring(6).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.debugf(e, "Unable to read %s", PROC_SELF_STATUS);
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,384 @@
+package com.github.mkouba.wsperf.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.sun.management.OperatingSystemMXBean;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Application;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Hot path metrics. Only striped counters are used when a message is processed, i.e. no locks. Open connections,
+ * executing handlers and the outbound queue depth are sampled every second on a worker thread, but only between
+ * {@code DELETE /wsperf/metrics} and the following {@code GET /wsperf/metrics}, i.e. while a run with the server
+ * metrics is measured.
+ * <p>
+ * The outbound queue depth is exposed neither by websockets-next nor by Undertow. Therefore, we sample the number of
+ * bytes in the kernel send queues of the established server sockets instead (Linux only). The {@code /proc/net/tcp}
+ * files are parsed byte by byte so that a sample does not allocate per socket.
+ * <p>
+ * The snapshot is available at {@code GET /wsperf/metrics}; {@code DELETE /wsperf/metrics} resets all metrics and
+ * starts the sampling.
+ */
+@Singleton
+public class ServerMetrics {
+
+    static final String PATH = "/wsperf/metrics";
+
+    static final int MAX_SAMPLES = 3600;
+
+    // 4 sub-buckets per power of two, i.e. the relative error is < 25%
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    static final List<Path> PROC_NET_TCP = List.of(Path.of("/proc/net/tcp"), Path.of("/proc/net/tcp6"));
+
+    static final int TCP_ESTABLISHED = 0x01;
+
+    @Inject
+    ServerInfo info;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    ServerTls tls;
+
+    @ConfigProperty(name = "quarkus.http.port", defaultValue = "8080")
+    int httpPort;
+
+    @ConfigProperty(name = "quarkus.http.ssl-port", defaultValue = "8443")
+    int httpsPort;
+
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder handlerTime = new LongAdder();
+    private final LongAccumulator handlerTimeMax = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] handlerTimeBuckets = new LongAdder[BUCKETS];
+
+    // Guarded by this; only used by the sampler and the route handlers, i.e. not on the hot path
+    private long resetAt;
+    private long resetCpuTime;
+    private long lastIn;
+    private long lastOut;
+    private long peakInPerSecond;
+    private long peakOutPerSecond;
+    private int peakOpenConnections;
+    private long peakExecuting;
+    private long peakOutboundQueue;
+    private final JsonArray samples = new JsonArray();
+    private long samplerId = -1;
+
+    public ServerMetrics() {
+        for (int i = 0; i < BUCKETS; i++) {
+            handlerTimeBuckets[i] = new LongAdder();
+        }
+        resetAt = System.nanoTime();
+        resetCpuTime = processCpuTime();
+    }
+
+    /**
+     * @return the start time that should be passed to {@link #messageProcessed(long)}
+     */
+    public long messageReceived() {
+        messagesIn.increment();
+        return System.nanoTime();
+    }
+
+    public void messageProcessed(long start) {
+        long duration = System.nanoTime() - start;
+        messagesOut.increment();
+        handlerTime.add(duration);
+        handlerTimeMax.accumulate(duration);
+        handlerTimeBuckets[bucket(duration)].increment();
+    }
+
+    void registerRoutes(@Observes Router router) {
+        router.get(PATH).handler(rc -> {
+            JsonObject snapshot = snapshot();
+            stopSampling();
+            rc.response()
+                    .putHeader("Content-Type", "application/json")
+                    .end(snapshot.encode());
+        });
+        router.delete(PATH).handler(rc -> {
+            reset();
+            startSampling();
+            rc.response().setStatusCode(204).end();
+        });
+    }
+
+    private synchronized void startSampling() {
+        if (samplerId != -1) {
+            vertx.cancelTimer(samplerId);
+        }
+        samplerId = vertx.setPeriodic(1000, id -> vertx.executeBlocking(() -> {
+            sample();
+            return null;
+        }, false));
+    }
+
+    private synchronized void stopSampling() {
+        if (samplerId != -1) {
+            vertx.cancelTimer(samplerId);
+            samplerId = -1;
+        }
+    }
+
+    private synchronized void sample() {
+        long in = messagesIn.sum();
+        long out = messagesOut.sum();
+        int open = info.openConnections();
+        long executing = in - out;
+        long outboundQueue = outboundQueue();
+        long inPerSecond = in - lastIn;
+        long outPerSecond = out - lastOut;
+        lastIn = in;
+        lastOut = out;
+        peakInPerSecond = Math.max(peakInPerSecond, inPerSecond);
+        peakOutPerSecond = Math.max(peakOutPerSecond, outPerSecond);
+        peakOpenConnections = Math.max(peakOpenConnections, open);
+        peakExecuting = Math.max(peakExecuting, executing);
+        peakOutboundQueue = Math.max(peakOutboundQueue, outboundQueue);
+        if (samples.size() == MAX_SAMPLES) {
+            samples.remove(0);
+        }
+        samples.add(new JsonObject()
+                .put("time", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resetAt))
+                .put("in", inPerSecond)
+                .put("out", outPerSecond)
+                .put("open", open)
+                .put("executing", executing)
+                .put("outboundQueue", outboundQueue));
+    }
+
+    synchronized void reset() {
+        messagesIn.reset();
+        messagesOut.reset();
+        handlerTime.reset();
+        handlerTimeMax.reset();
+        for (LongAdder bucket : handlerTimeBuckets) {
+            bucket.reset();
+        }
+        resetAt = System.nanoTime();
+        resetCpuTime = processCpuTime();
+        lastIn = 0;
+        lastOut = 0;
+        peakInPerSecond = 0;
+        peakOutPerSecond = 0;
+        peakOpenConnections = 0;
+        peakExecuting = 0;
+        peakOutboundQueue = 0;
+        samples.clear();
+    }
+
+    synchronized JsonObject snapshot() {
+        long elapsed = System.nanoTime() - resetAt;
+        double seconds = (double) elapsed / TimeUnit.SECONDS.toNanos(1);
+        long in = messagesIn.sum();
+        long out = messagesOut.sum();
+        return new JsonObject()
+                .put("server", info.type())
+                .put("quarkusVersion", Application.class.getPackage().getImplementationVersion())
+                .put("elapsed", TimeUnit.NANOSECONDS.toMillis(elapsed))
+                .put("cpuTime", cpuTime())
+                .put("tlsProvider", tls.provider())
+                .put("messagesIn", in)
+                .put("messagesOut", out)
+                .put("messagesInPerSecond", in / seconds)
+                .put("messagesOutPerSecond", out / seconds)
+                .put("peakMessagesInPerSecond", peakInPerSecond)
+                .put("peakMessagesOutPerSecond", peakOutPerSecond)
+                .put("openConnections", info.openConnections())
+                .put("peakOpenConnections", peakOpenConnections)
+                .put("executing", in - out)
+                .put("peakExecuting", peakExecuting)
+                .put("outboundQueue", outboundQueue())
+                .put("peakOutboundQueue", peakOutboundQueue)
+                .put("handlerTime", handlerTime(out))
+                .put("samples", samples.copy());
+    }
+
+    /**
+     * @return the CPU time of the server process since the last reset in milliseconds or {@code -1} if not available
+     */
+    private double cpuTime() {
+        long cpuTime = processCpuTime();
+        if (cpuTime < 0 || resetCpuTime < 0) {
+            return -1;
+        }
+        return (double) (cpuTime - resetCpuTime) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    static long processCpuTime() {
+        return ManagementFactory.getOperatingSystemMXBean() instanceof OperatingSystemMXBean os
+                ? os.getProcessCpuTime()
+                : -1;
+    }
+
+    /**
+     * @return the number of bytes in the send queues of the established server sockets or {@code -1} if not available
+     */
+    private long outboundQueue() {
+        long bytes = -1;
+        for (Path path : PROC_NET_TCP) {
+            // E.g. /proc/net/tcp6 is missing on hosts without IPv6
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            try (InputStream in = Files.newInputStream(path)) {
+                bytes = Math.max(bytes, 0) + sendQueueBytes(in, httpPort, httpsPort);
+            } catch (IOException e) {
+                Log.debugf(e, "Unable to read %s", path);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Sums the {@code tx_queue} column of the established sockets bound to one of the given local ports. The lines
+     * look like {@code sl local_address rem_address st tx_queue:rx_queue ...}, where all values are hexadecimal. The
+     * header line is skipped because it contains non-hexadecimal characters.
+     */
+    static long sendQueueBytes(InputStream in, int... ports) throws IOException {
+        byte[] buffer = new byte[8192];
+        long bytes = 0;
+        // The state of the current line
+        int column = -1;
+        boolean separator = true;
+        boolean valid = true;
+        long value = 0;
+        long port = -1;
+        long state = -1;
+        long txQueue = -1;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    if (valid && state == TCP_ESTABLISHED && txQueue >= 0 && contains(ports, port)) {
+                        bytes += txQueue;
+                    }
+                    column = -1;
+                    separator = true;
+                    valid = true;
+                    port = -1;
+                    state = -1;
+                    txQueue = -1;
+                } else if (b == ' ' || b == '\t') {
+                    if (!separator) {
+                        if (column == 1) {
+                            port = value;
+                        } else if (column == 3) {
+                            state = value;
+                        }
+                        separator = true;
+                    }
+                } else {
+                    if (separator) {
+                        column++;
+                        value = 0;
+                        separator = false;
+                    }
+                    if (b == ':') {
+                        if (column == 4) {
+                            txQueue = value;
+                        }
+                        value = 0;
+                    } else {
+                        int digit = Character.digit(b, 16);
+                        if (digit < 0) {
+                            valid = false;
+                        } else {
+                            // The IPv6 addresses overflow but only the port and the queues are used
+                            value = (value << 4) | digit;
+                        }
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean contains(int[] ports, long port) {
+        for (int p : ports) {
+            if (p == port) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private JsonObject handlerTime(long count) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = handlerTimeBuckets[i].sum();
+            total += counts[i];
+        }
+        return new JsonObject()
+                .put("unit", "ns")
+                .put("count", count)
+                .put("mean", count > 0 ? (double) handlerTime.sum() / count : 0)
+                .put("p50", percentile(counts, total, 50.0))
+                .put("p90", percentile(counts, total, 90.0))
+                .put("p99", percentile(counts, total, 99.0))
+                .put("p99.9", percentile(counts, total, 99.9))
+                .put("max", handlerTimeMax.get());
+    }
+
+    /**
+     * @return the upper bound of the bucket that contains the given percentile
+     */
+    static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100.0);
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            if (sum >= threshold) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return exp * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.github.mkouba.wsperf.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Singleton;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * A JFR recording of the measurement phase.
+ * <p>
+ * {@code POST /wsperf/jfr} starts a recording with the {@code profile} settings. {@code DELETE /wsperf/jfr} stops the
+ * recording, dumps it in {@code wsperf.jfr.dir} and returns the absolute path of the file, i.e. the recording can only
+ * be analyzed on the same host.
+ */
+@Singleton
+public class ServerRecording {
+
+    static final String PATH = "/wsperf/jfr";
+
+    @ConfigProperty(name = "wsperf.jfr.dir", defaultValue = "target/jfr")
+    Path dir;
+
+    // Guarded by this
+    private Recording recording;
+
+    void registerRoutes(@Observes Router router) {
+        router.post(PATH).blockingHandler(rc -> {
+            try {
+                start();
+                rc.response().setStatusCode(204).end();
+            } catch (IOException | ParseException e) {
+                rc.fail(e);
+            }
+        });
+        router.delete(PATH).blockingHandler(rc -> {
+            try {
+                Path file = stop();
+                if (file == null) {
+                    rc.response().setStatusCode(404).end();
+                } else {
+                    rc.response()
+                            .putHeader("Content-Type", "application/json")
+                            .end(new JsonObject().put("file", file.toString()).encode());
+                }
+            } catch (IOException e) {
+                rc.fail(e);
+            }
+        });
+    }
+
+    synchronized void start() throws IOException, ParseException {
+        if (recording != null) {
+            recording.close();
+        }
+        recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("wsperf");
+        recording.start();
+        Log.infof("JFR recording started");
+    }
+
+    /**
+     * @return the recording file or {@code null} if no recording is in progress
+     */
+    synchronized Path stop() throws IOException {
+        if (recording == null) {
+            return null;
+        }
+        try {
+            recording.stop();
+            Files.createDirectories(dir);
+            Path file = dir.resolve("wsperf-" + System.currentTimeMillis() + ".jfr").toAbsolutePath();
+            recording.dump(file);
+            Log.infof("JFR recording stopped: %s", file);
+            return file;
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+
+}
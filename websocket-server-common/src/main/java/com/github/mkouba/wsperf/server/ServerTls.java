@@ -0,0 +1,52 @@
+package com.github.mkouba.wsperf.server;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import io.quarkus.vertx.http.HttpServerOptionsCustomizer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import jakarta.inject.Singleton;
+
+/**
+ * Selects the TLS provider of the HTTPS server, i.e. {@code jdk} (default) or {@code openssl}. The OpenSSL provider
+ * requires netty-tcnative on the classpath, see the {@code tls} Maven profile. If not available then the JDK provider is
+ * used.
+ * <p>
+ * The HTTPS server is only started with the {@code tls} configuration profile, i.e. {@code -Dquarkus.profile=tls}.
+ */
+@Singleton
+public class ServerTls implements HttpServerOptionsCustomizer {
+
+    static final String OPENSSL = "openssl";
+
+    @ConfigProperty(name = "server.tls.provider", defaultValue = "jdk")
+    String provider;
+
+    // Set when the HTTPS server is configured
+    private volatile String actualProvider;
+
+    @Override
+    public void customizeHttpsServer(HttpServerOptions options) {
+        if (OPENSSL.equals(provider) && OpenSSLEngineOptions.isAvailable()) {
+            options.setSslEngineOptions(new OpenSSLEngineOptions());
+            actualProvider = OPENSSL;
+        } else {
+            if (OPENSSL.equals(provider)) {
+                Log.warn("OpenSSL is not available - the JDK TLS provider is used instead");
+            }
+            options.setSslEngineOptions(new JdkSSLEngineOptions());
+            actualProvider = "jdk";
+        }
+        Log.infof("HTTPS server uses the %s TLS provider", actualProvider);
+    }
+
+    /**
+     * @return the TLS provider or {@code null} if the HTTPS server is not started
+     */
+    String provider() {
+        return actualProvider;
+    }
+
+}
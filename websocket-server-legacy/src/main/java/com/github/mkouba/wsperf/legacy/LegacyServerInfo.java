@@ -0,0 +1,35 @@
+package com.github.mkouba.wsperf.legacy;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.mkouba.wsperf.server.ServerInfo;
+
+import jakarta.inject.Singleton;
+
+/**
+ * Undertow does not expose the open connections, i.e. they're counted by the endpoint.
+ */
+@Singleton
+public class LegacyServerInfo implements ServerInfo {
+
+    private final LongAdder openConnections = new LongAdder();
+
+    void connectionOpened() {
+        openConnections.increment();
+    }
+
+    void connectionClosed() {
+        openConnections.decrement();
+    }
+
+    @Override
+    public String type() {
+        return "legacy";
+    }
+
+    @Override
+    public int openConnections() {
+        return openConnections.intValue();
+    }
+
+}
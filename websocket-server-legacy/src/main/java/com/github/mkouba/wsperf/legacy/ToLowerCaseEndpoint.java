@@ -1,7 +1,11 @@
 package com.github.mkouba.wsperf.legacy;
 
+import io.quarkus.runtime.Application;
 import jakarta.inject.Inject;
+import jakarta.websocket.OnClose;
 import jakarta.websocket.OnMessage;
+import jakarta.websocket.OnOpen;
+import jakarta.websocket.Session;
 import jakarta.websocket.server.ServerEndpoint;
 
 @ServerEndpoint("/to-lower-case")
@@ -10,8 +14,23 @@ public class ToLowerCaseEndpoint {
     @Inject
     ToLowewCaseService service;
 
+    @Inject
+    LegacyServerInfo info;
+
+    @OnOpen
+    void open(Session session) {
+        info.connectionOpened();
+        session.getAsyncRemote().sendText("_" + Application.class.getPackage().getImplementationVersion());
+    }
+
     @OnMessage
     String convert(String message) {
         return service.convert(message);
     }
-}
\ No newline at end of file
+
+    @OnClose
+    void close() {
+        info.connectionClosed();
+    }
+
+}
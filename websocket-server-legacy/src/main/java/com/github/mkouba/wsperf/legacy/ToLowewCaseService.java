@@ -1,14 +1,25 @@
 package com.github.mkouba.wsperf.legacy;
 
+import com.github.mkouba.wsperf.server.ServerMetrics;
+
 import io.quarkus.logging.Log;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class ToLowewCaseService {
+
+    @Inject
+    ServerMetrics metrics;
     
     String convert(String value) {
-        Log.debugf("Converting %s", value);
-        return value.toLowerCase();
+        long start = metrics.messageReceived();
+        try {
+            Log.debugf("Converting %s", value);
+            return value.toLowerCase();
+        } finally {
+            metrics.messageProcessed(start);
+        }
     }
 
 }
@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates the endpoints of the routing-scale benchmark, see the "routes" profile in pom.xml. Each endpoint converts
+ * the messages to lower case like the {@code to-lower-case} endpoint.
+ * <ul>
+ * <li>{@code static} - {@code /routes/r<index>}</li>
+ * <li>{@code param} - {@code /routes/r<index>/rooms/{roomId}}, the room id is passed to the {@code @OnTextMessage}
+ * callback</li>
+ * </ul>
+ * Usage: {@code java RouteGenerator.java <output-dir> <count> <kind>}
+ */
+public class RouteGenerator {
+
+    static final String PACKAGE = "com.github.mkouba.wsperf.next";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: RouteGenerator <output-dir> <count> <kind>");
+        }
+        Path dir = Path.of(args[0], PACKAGE.split("\\."));
+        int count = Integer.parseInt(args[1]);
+        String kind = args[2];
+        if (count < 1) {
+            throw new IllegalArgumentException("The number of routes must be positive: " + count);
+        }
+        if (!"static".equals(kind) && !"param".equals(kind)) {
+            throw new IllegalArgumentException("Unsupported kind of routes: " + kind);
+        }
+        Files.createDirectories(dir);
+        for (int i = 0; i < count; i++) {
+            String name = "RouteEndpoint" + i;
+            Files.writeString(dir.resolve(name + ".java"), endpoint(name, i, kind));
+        }
+        System.out.printf("Generated %s %s routes in %s%n", count, kind, dir);
+    }
+
+    static String endpoint(String name, int index, String kind) {
+        boolean param = "param".equals(kind);
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n");
+        source.append("import io.quarkus.runtime.Application;\n");
+        source.append("import io.quarkus.websockets.next.InboundProcessingMode;\n");
+        source.append("import io.quarkus.websockets.next.OnOpen;\n");
+        source.append("import io.quarkus.websockets.next.OnTextMessage;\n");
+        if (param) {
+            source.append("import io.quarkus.websockets.next.PathParam;\n");
+        }
+        source.append("import io.quarkus.websockets.next.WebSocket;\n");
+        source.append("import jakarta.inject.Inject;\n\n");
+        source.append("@WebSocket(path = \"/routes/r").append(index).append(param ? "/rooms/{roomId}" : "")
+                .append("\", inboundProcessingMode = InboundProcessingMode.CONCURRENT)\n");
+        source.append("public class ").append(name).append(" {\n\n");
+        source.append("    @Inject\n");
+        source.append("    ToLowerCaseService service;\n\n");
+        source.append("    @OnOpen\n");
+        source.append("    String open() {\n");
+        source.append("        return \"_\" + Application.class.getPackage().getImplementationVersion();\n");
+        source.append("    }\n\n");
+        source.append("    @OnTextMessage\n");
+        if (param) {
+            source.append("    String convert(String message, @PathParam String roomId) {\n");
+        } else {
+            source.append("    String convert(String message) {\n");
+        }
+        source.append("        return service.convert(message);\n");
+        source.append("    }\n\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+}
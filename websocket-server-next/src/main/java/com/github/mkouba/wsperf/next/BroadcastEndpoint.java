@@ -0,0 +1,36 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.runtime.Application;
+import io.quarkus.websockets.next.OnBinaryMessage;
+import io.quarkus.websockets.next.OnOpen;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocket;
+import io.vertx.core.buffer.Buffer;
+import jakarta.inject.Inject;
+
+/**
+ * Fan-out workload. The message is converted once and the result is sent to all open connections of this endpoint,
+ * including the sender, i.e. {@code WebSocketConnection.broadcast()} is used.
+ */
+@WebSocket(path = "broadcast")
+public class BroadcastEndpoint {
+
+    @Inject
+    ToLowerCaseService service;
+
+    @OnOpen
+    String open() {
+        return "_" + Application.class.getPackage().getImplementationVersion();
+    }
+
+    @OnTextMessage(broadcast = true)
+    String broadcast(String message) {
+        return service.convert(message);
+    }
+
+    @OnBinaryMessage(broadcast = true)
+    Buffer broadcast(Buffer message) {
+        return service.convert(message);
+    }
+
+}
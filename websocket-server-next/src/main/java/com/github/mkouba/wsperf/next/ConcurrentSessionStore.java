@@ -0,0 +1,66 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.mkouba.wsperf.next.SessionWorkload.Room;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * The sessions and rooms are kept in {@link ConcurrentHashMap}s and updated with {@code compute()}, i.e. only the hash
+ * bin of the session or the room is locked. The message is converted while the bin of the session is locked.
+ */
+@Singleton
+public class ConcurrentSessionStore implements SessionStore {
+
+    @Inject
+    SessionWorkload workload;
+
+    final ConcurrentMap<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+
+    @Override
+    public void open(String connectionId) {
+        SessionState state = workload.newState(connectionId);
+        sessions.put(connectionId, state);
+        rooms.compute(state.room, (k, room) -> {
+            if (room == null) {
+                room = new Room();
+            }
+            room.members.add(connectionId);
+            return room;
+        });
+    }
+
+    @Override
+    public String message(String connectionId, String message) {
+        String[] result = new String[1];
+        SessionState state = sessions.computeIfPresent(connectionId, (k, s) -> {
+            result[0] = workload.process(s, message);
+            return s;
+        });
+        if (state == null) {
+            throw new IllegalStateException("Session not found: " + connectionId);
+        }
+        rooms.computeIfPresent(state.room, (k, room) -> {
+            room.messages++;
+            return room;
+        });
+        return result[0];
+    }
+
+    @Override
+    public void close(String connectionId) {
+        SessionState state = sessions.remove(connectionId);
+        if (state != null) {
+            rooms.computeIfPresent(state.room, (k, room) -> {
+                room.members.remove(connectionId);
+                return room;
+            });
+        }
+    }
+
+}
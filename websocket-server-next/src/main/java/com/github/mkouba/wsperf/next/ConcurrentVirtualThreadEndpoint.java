@@ -0,0 +1,20 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocket;
+import io.smallrye.common.annotation.RunOnVirtualThread;
+
+/**
+ * CONCURRENT processing mode. The message is converted on a virtual thread (requires Java 21+).
+ */
+@WebSocket(path = "concurrent-virtual-thread", inboundProcessingMode = InboundProcessingMode.CONCURRENT)
+public class ConcurrentVirtualThreadEndpoint extends ExecutionModelEndpoint {
+
+    @RunOnVirtualThread
+    @OnTextMessage
+    String convert(String message) {
+        return service.convert(message);
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocket;
+import io.smallrye.common.annotation.Blocking;
+
+/**
+ * CONCURRENT processing mode. The message is converted on a worker thread.
+ */
+@WebSocket(path = "concurrent-worker", inboundProcessingMode = InboundProcessingMode.CONCURRENT)
+public class ConcurrentWorkerEndpoint extends ExecutionModelEndpoint {
+
+    @Blocking
+    @OnTextMessage
+    String convert(String message) {
+        return service.convert(message);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.mkouba.wsperf.next.SessionWorkload.ConcurrentRoom;
+
+import jakarta.enterprise.context.SessionScoped;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * The store is a {@link SessionScoped} bean, i.e. there is one instance per connection. The state is confined to the
+ * connection and no locks are needed as long as the messages of a connection are processed serially. The rooms are
+ * shared and lock-free, like in {@link StripedSessionStore}.
+ */
+@SessionScoped
+public class ConfinedSessionStore implements SessionStore {
+
+    @Inject
+    SessionWorkload workload;
+
+    @Inject
+    Rooms rooms;
+
+    private SessionState state;
+
+    @Override
+    public void open(String connectionId) {
+        state = workload.newState(connectionId);
+        rooms.rooms.computeIfAbsent(state.room, k -> new ConcurrentRoom()).members.add(connectionId);
+    }
+
+    @Override
+    public String message(String connectionId, String message) {
+        if (state == null) {
+            throw new IllegalStateException("Session not found: " + connectionId);
+        }
+        rooms.rooms.get(state.room).messages.increment();
+        return workload.process(state, message);
+    }
+
+    @Override
+    public void close(String connectionId) {
+        if (state != null) {
+            rooms.rooms.get(state.room).members.remove(connectionId);
+            state = null;
+        }
+    }
+
+    @Singleton
+    static class Rooms {
+
+        final ConcurrentMap<String, ConcurrentRoom> rooms = new ConcurrentHashMap<>();
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.runtime.Application;
+import io.quarkus.websockets.next.OnOpen;
+import jakarta.inject.Inject;
+
+/**
+ * The common part of the execution model matrix endpoints. The subclasses only declare the path, the processing mode
+ * and the {@code @OnTextMessage} callback with the execution model, i.e. the event loop, a worker thread, a virtual
+ * thread or a {@link io.smallrye.mutiny.Uni}.
+ * <p>
+ * The virtual thread variants require Java 21+. With an older runtime the handshake fails and the orchestrator skips
+ * the variants.
+ */
+abstract class ExecutionModelEndpoint {
+
+    @Inject
+    ToLowerCaseService service;
+
+    @OnOpen
+    String open() {
+        return "_" + Application.class.getPackage().getImplementationVersion();
+    }
+
+}
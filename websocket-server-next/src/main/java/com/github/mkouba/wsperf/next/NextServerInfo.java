@@ -0,0 +1,25 @@
+package com.github.mkouba.wsperf.next;
+
+import com.github.mkouba.wsperf.server.ServerInfo;
+
+import io.quarkus.websockets.next.OpenConnections;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+@Singleton
+public class NextServerInfo implements ServerInfo {
+
+    @Inject
+    OpenConnections connections;
+
+    @Override
+    public String type() {
+        return "next";
+    }
+
+    @Override
+    public int openConnections() {
+        return connections.listAll().size();
+    }
+
+}
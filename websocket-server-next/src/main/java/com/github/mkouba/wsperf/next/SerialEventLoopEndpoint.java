@@ -0,0 +1,18 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocket;
+
+/**
+ * SERIAL processing mode. The message is converted synchronously on the event loop.
+ */
+@WebSocket(path = "serial-event-loop", inboundProcessingMode = InboundProcessingMode.SERIAL)
+public class SerialEventLoopEndpoint extends ExecutionModelEndpoint {
+
+    @OnTextMessage
+    String convert(String message) {
+        return service.convert(message);
+    }
+
+}
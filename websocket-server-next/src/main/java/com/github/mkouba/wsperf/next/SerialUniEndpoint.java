@@ -0,0 +1,19 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocket;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * SERIAL processing mode. The message is converted on the event loop and the result is returned as a {@link Uni}.
+ */
+@WebSocket(path = "serial-uni", inboundProcessingMode = InboundProcessingMode.SERIAL)
+public class SerialUniEndpoint extends ExecutionModelEndpoint {
+
+    @OnTextMessage
+    Uni<String> convert(String message) {
+        return Uni.createFrom().item(() -> service.convert(message));
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocket;
+import io.smallrye.common.annotation.Blocking;
+
+/**
+ * SERIAL processing mode. The message is converted on a worker thread.
+ */
+@WebSocket(path = "serial-worker", inboundProcessingMode = InboundProcessingMode.SERIAL)
+public class SerialWorkerEndpoint extends ExecutionModelEndpoint {
+
+    @Blocking
+    @OnTextMessage
+    String convert(String message) {
+        return service.convert(message);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.annotations.QuarkusMain;
+
+/**
+ * The permessage-deflate compression is only supported if the server is started with {@code -Dserver.compression=true},
+ * i.e. the default server is not affected.
+ * <p>
+ * Quarkus sets the {@code vertx.disableWebsockets} system property unless it's already set. websockets-next does not
+ * need the Vert.x WebSocket handler but the property also prevents the negotiation of the compression extensions, i.e.
+ * permessage-deflate would never be accepted. Therefore, the property is set to {@code false} together with
+ * {@code quarkus.websockets-next.server.per-message-compression-supported=true}. The compression level is configured
+ * with {@code quarkus.websockets-next.server.compression-level}; the compression is only used if offered by the client.
+ */
+@QuarkusMain
+public class ServerMain {
+
+    static final String COMPRESSION = "server.compression";
+    static final String DISABLE_WEBSOCKETS = "vertx.disableWebsockets";
+    static final String COMPRESSION_SUPPORTED = "quarkus.websockets-next.server.per-message-compression-supported";
+
+    public static void main(String... args) {
+        if (Boolean.getBoolean(COMPRESSION)) {
+            setIfAbsent(DISABLE_WEBSOCKETS, "false");
+            setIfAbsent(COMPRESSION_SUPPORTED, "true");
+        }
+        Quarkus.run(args);
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.WebSocket;
+import jakarta.inject.Inject;
+
+/**
+ * Stateful workload, CONCURRENT processing mode. The state is kept in concurrent maps,
+ * see {@link ConcurrentSessionStore}.
+ */
+@WebSocket(path = "session-concurrent-map", inboundProcessingMode = InboundProcessingMode.CONCURRENT)
+public class SessionConcurrentMapEndpoint extends SessionEndpoint {
+
+    @Inject
+    ConcurrentSessionStore store;
+
+    @Override
+    SessionStore store() {
+        return store;
+    }
+
+}
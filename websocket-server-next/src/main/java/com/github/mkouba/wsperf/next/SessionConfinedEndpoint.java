@@ -0,0 +1,22 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.WebSocket;
+import jakarta.inject.Inject;
+
+/**
+ * Stateful workload, SERIAL processing mode. The state is confined to the connection,
+ * see {@link ConfinedSessionStore}.
+ */
+@WebSocket(path = "session-confined", inboundProcessingMode = InboundProcessingMode.SERIAL)
+public class SessionConfinedEndpoint extends SessionEndpoint {
+
+    @Inject
+    ConfinedSessionStore store;
+
+    @Override
+    SessionStore store() {
+        return store;
+    }
+
+}
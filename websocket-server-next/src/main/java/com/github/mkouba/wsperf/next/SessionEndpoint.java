@@ -0,0 +1,44 @@
+package com.github.mkouba.wsperf.next;
+
+import com.github.mkouba.wsperf.server.ServerMetrics;
+
+import io.quarkus.runtime.Application;
+import io.quarkus.websockets.next.OnClose;
+import io.quarkus.websockets.next.OnOpen;
+import io.quarkus.websockets.next.OnTextMessage;
+import io.quarkus.websockets.next.WebSocketConnection;
+import jakarta.inject.Inject;
+
+/**
+ * The callbacks of the stateful workload endpoints. The subclasses only declare the path, the processing mode and the
+ * {@link SessionStore}, see {@link SessionWorkload}.
+ */
+abstract class SessionEndpoint {
+
+    @Inject
+    ServerMetrics metrics;
+
+    abstract SessionStore store();
+
+    @OnOpen
+    String open(WebSocketConnection connection) {
+        store().open(connection.id());
+        return "_" + Application.class.getPackage().getImplementationVersion();
+    }
+
+    @OnTextMessage
+    String convert(String message, WebSocketConnection connection) {
+        long start = metrics.messageReceived();
+        try {
+            return store().message(connection.id(), message);
+        } finally {
+            metrics.messageProcessed(start);
+        }
+    }
+
+    @OnClose
+    void close(WebSocketConnection connection) {
+        store().close(connection.id());
+    }
+
+}
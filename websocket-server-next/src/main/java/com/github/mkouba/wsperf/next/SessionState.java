@@ -0,0 +1,62 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state of a connection in the session workload: a message counter, a sliding-window rate limit and a small LRU
+ * cache of the recent results. This class is not thread-safe, i.e. the {@link SessionStore} is responsible for the
+ * synchronization.
+ */
+class SessionState {
+
+    static final long WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    final String room;
+
+    final Map<String, String> cache;
+
+    long messages;
+
+    // The sliding window is approximated with two fixed windows; the count of the previous window is weighted by its
+    // overlap with the sliding window
+    private long windowStart;
+    private long currentCount;
+    private long previousCount;
+
+    SessionState(String room, int cacheSize) {
+        this.room = room;
+        this.cache = new LinkedHashMap<>(cacheSize * 2, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+
+        };
+    }
+
+    /**
+     * @param now
+     * @param limit the max number of messages per second
+     * @return {@code true} if the message is within the rate limit
+     */
+    boolean acquire(long now, int limit) {
+        long start = now - Math.floorMod(now, WINDOW);
+        if (start != windowStart) {
+            previousCount = start - windowStart == WINDOW ? currentCount : 0;
+            currentCount = 0;
+            windowStart = start;
+        }
+        double previousWeight = 1.0 - (double) (now - start) / WINDOW;
+        if (previousCount * previousWeight + currentCount >= limit) {
+            return false;
+        }
+        currentCount++;
+        return true;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.github.mkouba.wsperf.next;
+
+/**
+ * Keeps the per-connection {@link SessionState} and the shared room membership of the session workload, see
+ * {@link SessionWorkload}. The implementations only differ in the way the state is synchronized.
+ */
+interface SessionStore {
+
+    void open(String connectionId);
+
+    /**
+     * @param connectionId
+     * @param message
+     * @return the converted message
+     */
+    String message(String connectionId, String message);
+
+    void close(String connectionId);
+
+}
@@ -0,0 +1,22 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.WebSocket;
+import jakarta.inject.Inject;
+
+/**
+ * Stateful workload, CONCURRENT processing mode. The sessions are guarded by striped locks,
+ * see {@link StripedSessionStore}.
+ */
+@WebSocket(path = "session-striped", inboundProcessingMode = InboundProcessingMode.CONCURRENT)
+public class SessionStripedEndpoint extends SessionEndpoint {
+
+    @Inject
+    StripedSessionStore store;
+
+    @Override
+    SessionStore store() {
+        return store;
+    }
+
+}
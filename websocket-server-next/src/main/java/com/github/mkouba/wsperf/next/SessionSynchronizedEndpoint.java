@@ -0,0 +1,22 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.WebSocket;
+import jakarta.inject.Inject;
+
+/**
+ * Stateful workload, CONCURRENT processing mode. The state is guarded by a single lock,
+ * see {@link SynchronizedSessionStore}.
+ */
+@WebSocket(path = "session-synchronized", inboundProcessingMode = InboundProcessingMode.CONCURRENT)
+public class SessionSynchronizedEndpoint extends SessionEndpoint {
+
+    @Inject
+    SynchronizedSessionStore store;
+
+    @Override
+    SessionStore store() {
+        return store;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Stateful workload, i.e. the contention cost of the {@code CONCURRENT} processing mode shows up. Each connection has
+ * its own {@link SessionState} and joins one of {@code wsperf.session.rooms} rooms shared by all connections. For each
+ * message the session counter is incremented, the sliding-window rate limit is checked, the result is looked up in the
+ * session cache by the payload of the message and the message count of the room is incremented.
+ * <p>
+ * The messages above the rate limit are only counted and still converted so that the test client can validate all
+ * replies.
+ * <p>
+ * The metrics are recorded once per message by {@link SessionEndpoint}, i.e. a cache hit and a miss are both timed as
+ * a single processed message.
+ */
+@Singleton
+public class SessionWorkload {
+
+    @ConfigProperty(name = "wsperf.session.rooms", defaultValue = "16")
+    int rooms;
+
+    /**
+     * The max number of messages per second per connection.
+     */
+    @ConfigProperty(name = "wsperf.session.rate-limit", defaultValue = "1000")
+    int rateLimit;
+
+    @ConfigProperty(name = "wsperf.session.cache-size", defaultValue = "16")
+    int cacheSize;
+
+    @Inject
+    ToLowerCaseService service;
+
+    final LongAdder throttled = new LongAdder();
+
+    String room(String connectionId) {
+        return "room-" + Math.floorMod(connectionId.hashCode(), rooms);
+    }
+
+    SessionState newState(String connectionId) {
+        return new SessionState(room(connectionId), cacheSize);
+    }
+
+    /**
+     * The caller is responsible for the synchronization of the state.
+     */
+    String process(SessionState state, String message) {
+        int start = payloadStart(message);
+        String payload = message.substring(start);
+        String result = lookup(state, payload);
+        if (result == null) {
+            result = service.toLowerCase(payload);
+            state.cache.put(payload, result);
+        }
+        return tag(message, start, result);
+    }
+
+    /**
+     * Increments the message counter, checks the rate limit and looks up the cached result. The caller is responsible
+     * for the synchronization of the state.
+     *
+     * @param payload the message without the tag, see {@link #payloadStart(String)}
+     * @return the cached result or {@code null}
+     */
+    String lookup(SessionState state, String payload) {
+        state.messages++;
+        if (!state.acquire(System.nanoTime(), rateLimit)) {
+            throttled.increment();
+        }
+        return state.cache.get(payload);
+    }
+
+    /**
+     * The test client prefixes each message with a tag of colon-terminated numeric fields, e.g.
+     * {@code <nanoTime>:<payloadIndex>:}. The tag is unique per message and therefore it's skipped so that the results
+     * are cached by the payload.
+     *
+     * @return the index where the payload starts, i.e. {@code 0} if the message is not tagged
+     */
+    static int payloadStart(String message) {
+        int start = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == ':' && i > start) {
+                start = i + 1;
+            } else if ((c < '0' || c > '9') && (c != '-' || i != start)) {
+                break;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @return the result prefixed with the tag of the message
+     */
+    static String tag(String message, int payloadStart, String result) {
+        return payloadStart == 0 ? result : message.substring(0, payloadStart) + result;
+    }
+
+    /**
+     * A room guarded by the caller.
+     */
+    static class Room {
+
+        final Set<String> members = new HashSet<>();
+
+        long messages;
+
+    }
+
+    /**
+     * A room that can be shared without locks.
+     */
+    static class ConcurrentRoom {
+
+        final Set<String> members = ConcurrentHashMap.newKeySet();
+
+        final LongAdder messages = new LongAdder();
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.mkouba.wsperf.next.SessionWorkload.ConcurrentRoom;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * The sessions are kept in a {@link ConcurrentHashMap} and each session is guarded by one of the striped locks. Unlike
+ * {@link ConcurrentSessionStore} the message is converted outside the lock. The rooms are lock-free, i.e. a concurrent
+ * set of members and a striped message counter.
+ */
+@Singleton
+public class StripedSessionStore implements SessionStore {
+
+    @Inject
+    SessionWorkload workload;
+
+    final ConcurrentMap<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ConcurrentRoom> rooms = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] locks;
+
+    public StripedSessionStore() {
+        // A power of two, at least 4 stripes per CPU
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public void open(String connectionId) {
+        SessionState state = workload.newState(connectionId);
+        sessions.put(connectionId, state);
+        rooms.computeIfAbsent(state.room, k -> new ConcurrentRoom()).members.add(connectionId);
+    }
+
+    @Override
+    public String message(String connectionId, String message) {
+        SessionState state = sessions.get(connectionId);
+        if (state == null) {
+            throw new IllegalStateException("Session not found: " + connectionId);
+        }
+        int start = SessionWorkload.payloadStart(message);
+        String payload = message.substring(start);
+        ReentrantLock lock = lock(connectionId);
+        String result;
+        lock.lock();
+        try {
+            result = workload.lookup(state, payload);
+        } finally {
+            lock.unlock();
+        }
+        if (result == null) {
+            result = workload.service.toLowerCase(payload);
+            lock.lock();
+            try {
+                state.cache.put(payload, result);
+            } finally {
+                lock.unlock();
+            }
+        }
+        rooms.get(state.room).messages.increment();
+        return SessionWorkload.tag(message, start, result);
+    }
+
+    @Override
+    public void close(String connectionId) {
+        SessionState state = sessions.remove(connectionId);
+        if (state != null) {
+            rooms.get(state.room).members.remove(connectionId);
+        }
+    }
+
+    private ReentrantLock lock(String connectionId) {
+        int hash = connectionId.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+}
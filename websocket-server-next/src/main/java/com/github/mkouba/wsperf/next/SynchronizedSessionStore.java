@@ -0,0 +1,49 @@
+package com.github.mkouba.wsperf.next;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.mkouba.wsperf.next.SessionWorkload.Room;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * All sessions and rooms are guarded by a single lock, i.e. the messages of all connections are processed one by one.
+ */
+@Singleton
+public class SynchronizedSessionStore implements SessionStore {
+
+    @Inject
+    SessionWorkload workload;
+
+    final Map<String, SessionState> sessions = new HashMap<>();
+
+    private final Map<String, Room> rooms = new HashMap<>();
+
+    @Override
+    public synchronized void open(String connectionId) {
+        SessionState state = workload.newState(connectionId);
+        sessions.put(connectionId, state);
+        rooms.computeIfAbsent(state.room, k -> new Room()).members.add(connectionId);
+    }
+
+    @Override
+    public synchronized String message(String connectionId, String message) {
+        SessionState state = sessions.get(connectionId);
+        if (state == null) {
+            throw new IllegalStateException("Session not found: " + connectionId);
+        }
+        rooms.get(state.room).messages++;
+        return workload.process(state, message);
+    }
+
+    @Override
+    public synchronized void close(String connectionId) {
+        SessionState state = sessions.remove(connectionId);
+        if (state != null) {
+            rooms.get(state.room).members.remove(connectionId);
+        }
+    }
+
+}
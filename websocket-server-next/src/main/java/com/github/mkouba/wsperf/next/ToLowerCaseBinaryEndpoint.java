@@ -0,0 +1,27 @@
+package com.github.mkouba.wsperf.next;
+
+import io.quarkus.runtime.Application;
+import io.quarkus.websockets.next.InboundProcessingMode;
+import io.quarkus.websockets.next.OnBinaryMessage;
+import io.quarkus.websockets.next.OnOpen;
+import io.quarkus.websockets.next.WebSocket;
+import io.vertx.core.buffer.Buffer;
+import jakarta.inject.Inject;
+
+@WebSocket(path = "to-lower-case-binary", inboundProcessingMode = InboundProcessingMode.CONCURRENT)
+public class ToLowerCaseBinaryEndpoint {
+
+    @Inject
+    ToLowerCaseService service;
+
+    @OnOpen
+    String open() {
+        return "_" + Application.class.getPackage().getImplementationVersion();
+    }
+
+    @OnBinaryMessage
+    Buffer convert(Buffer message) {
+        return service.convert(message);
+    }
+
+}
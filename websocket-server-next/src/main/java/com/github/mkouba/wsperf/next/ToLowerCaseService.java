@@ -1,14 +1,74 @@
 package com.github.mkouba.wsperf.next;
 
+import java.nio.charset.StandardCharsets;
+
+import com.github.mkouba.wsperf.server.ServerMetrics;
+
 import io.quarkus.logging.Log;
+import io.vertx.core.buffer.Buffer;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class ToLowerCaseService {
+
+    @Inject
+    ServerMetrics metrics;
     
     String convert(String value) {
+        long start = metrics.messageReceived();
+        try {
+            return toLowerCase(value);
+        } finally {
+            metrics.messageProcessed(start);
+        }
+    }
+
+    /**
+     * The conversion without the metrics, i.e. the caller is responsible for timing the message.
+     */
+    String toLowerCase(String value) {
         Log.debugf("Converting %s", value);
         return value.toLowerCase();
     }
 
+    /**
+     * ASCII is converted in place, i.e. no allocation is needed. The input is decoded and converted as a string only if
+     * a non-ASCII byte is found.
+     */
+    Buffer convert(Buffer value) {
+        long start = metrics.messageReceived();
+        try {
+            return convertAscii(value);
+        } finally {
+            metrics.messageProcessed(start);
+        }
+    }
+
+    private Buffer convertAscii(Buffer value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            byte b = value.getByte(i);
+            if (b < 0) {
+                // Non-ASCII - the bytes converted so far are not affected by a second conversion
+                return convertNonAscii(value);
+            }
+            if (b >= 'A' && b <= 'Z') {
+                value.setByte(i, (byte) (b + ('a' - 'A')));
+            }
+        }
+        if (Log.isDebugEnabled()) {
+            Log.debugf("Converted %s bytes", length);
+        }
+        return value;
+    }
+
+    private Buffer convertNonAscii(Buffer value) {
+        String str = value.toString(StandardCharsets.UTF_8);
+        if (Log.isDebugEnabled()) {
+            Log.debugf("Converting non-ASCII %s", str);
+        }
+        return Buffer.buffer(str.toLowerCase().getBytes(StandardCharsets.UTF_8));
+    }
+
 }
@@ -0,0 +1,139 @@
+package com.github.mkouba.wsperf.next;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+public class SessionStateTest {
+
+    static final int CONNECTIONS = 4;
+    static final int THREADS = 8;
+    static final int MESSAGES = 20000;
+    // More payloads than cache entries so that the entries are evicted concurrently
+    static final int PAYLOADS = 40;
+
+    @Inject
+    SessionWorkload workload;
+
+    @Inject
+    SynchronizedSessionStore synchronizedStore;
+
+    @Inject
+    ConcurrentSessionStore concurrentStore;
+
+    @Inject
+    StripedSessionStore stripedStore;
+
+    @Test
+    public void testCacheEviction() {
+        SessionState state = new SessionState("room", 2);
+        state.cache.put("a", "1");
+        state.cache.put("b", "2");
+        // Access order, i.e. "b" is the least recently used entry
+        state.cache.get("a");
+        state.cache.put("c", "3");
+        assertEquals(2, state.cache.size());
+        assertNull(state.cache.get("b"));
+        assertEquals("1", state.cache.get("a"));
+        assertEquals("3", state.cache.get("c"));
+    }
+
+    @Test
+    public void testRateLimit() {
+        SessionState state = new SessionState("room", 2);
+        long start = 5 * SessionState.WINDOW;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(state.acquire(start + i, 10));
+        }
+        assertFalse(state.acquire(start + 10, 10));
+        // The previous window is weighted by its overlap with the sliding window
+        long half = start + SessionState.WINDOW + SessionState.WINDOW / 2;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(state.acquire(half, 10));
+        }
+        assertFalse(state.acquire(half, 10));
+        // The previous window does not count if a whole window was skipped
+        long later = start + 3 * SessionState.WINDOW;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(state.acquire(later + i, 10));
+        }
+        assertFalse(state.acquire(later + 10, 10));
+    }
+
+    @Test
+    public void testSynchronizedStore() throws Exception {
+        assertConcurrentMessages(synchronizedStore, synchronizedStore.sessions, "sync");
+    }
+
+    @Test
+    public void testConcurrentStore() throws Exception {
+        assertConcurrentMessages(concurrentStore, concurrentStore.sessions, "concurrent");
+    }
+
+    @Test
+    public void testStripedStore() throws Exception {
+        assertConcurrentMessages(stripedStore, stripedStore.sessions, "striped");
+    }
+
+    /**
+     * Multiple threads send messages to the same connections. A missing lock shows up as a lost update of the message
+     * counter, a broken LRU cache or a wrong reply.
+     */
+    private void assertConcurrentMessages(SessionStore store, Map<String, SessionState> sessions, String prefix)
+            throws Exception {
+        List<String> connections = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            String connectionId = prefix + i;
+            connections.add(connectionId);
+            store.open(connectionId);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    latch.await();
+                    for (int i = 0; i < MESSAGES; i++) {
+                        String tag = System.nanoTime() + ":" + thread + ":" + i + ":";
+                        String payload = "PAYLOAD-" + (i / CONNECTIONS % PAYLOADS);
+                        String reply = store.message(connections.get(i % CONNECTIONS), tag + payload);
+                        assertEquals(tag + payload.toLowerCase(), reply);
+                    }
+                    return null;
+                }));
+            }
+            latch.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (String connectionId : connections) {
+            SessionState state = sessions.get(connectionId);
+            assertEquals(THREADS * MESSAGES / CONNECTIONS, state.messages);
+            assertEquals(workload.cacheSize, state.cache.size());
+            store.close(connectionId);
+            assertNull(sessions.get(connectionId));
+        }
+    }
+
+}